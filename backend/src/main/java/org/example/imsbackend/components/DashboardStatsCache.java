@@ -0,0 +1,117 @@
+package org.example.imsbackend.components;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.example.imsbackend.dto.StatsData;
+import org.example.imsbackend.services.DashboardService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Dashboard stats snapshot refreshed in the background. Readers get the current snapshot without locking, the
+ * snapshot is swapped atomically and never modified after it is published. It is dropped early once enough product
+ * writes accumulate, and a snapshot older than the staleness bound is never served. Stats with a section that timed
+ * out or failed do not replace a complete snapshot that is still fresh, and are only kept for a shorter bound.
+ */
+@Component
+@RequiredArgsConstructor
+public class DashboardStatsCache {
+    private final DashboardService dashboardService;
+    private final MeterRegistry meterRegistry;
+
+    private final AtomicReference<Snapshot> snapshot = new AtomicReference<>();
+    private final AtomicInteger pendingWrites = new AtomicInteger();
+    private final ReentrantLock refreshLock = new ReentrantLock();
+
+    @Value("${ims.dashboard.cache.write-threshold:50}")
+    private int writeThreshold;
+    @Value("${ims.dashboard.cache.max-staleness-ms:15000}")
+    private long maxStalenessMs;
+    @Value("${ims.dashboard.cache.partial-max-staleness-ms:1000}")
+    private long partialMaxStalenessMs = 1000;
+
+    private Counter hits;
+    private Counter misses;
+    private Timer refreshTimer;
+
+    @PostConstruct
+    void registerMetrics() {
+        hits = Counter.builder("ims.dashboard.cache.requests").tag("result", "hit").register(meterRegistry);
+        misses = Counter.builder("ims.dashboard.cache.requests").tag("result", "miss").register(meterRegistry);
+        refreshTimer = Timer.builder("ims.dashboard.cache.refresh").register(meterRegistry);
+    }
+
+    public StatsData get() {
+        Snapshot current = snapshot.get();
+        if (current != null && !current.isStale()) {
+            hits.increment();
+            return current.stats();
+        }
+        misses.increment();
+        return refresh(current);
+    }
+
+    @Scheduled(fixedDelayString = "${ims.dashboard.cache.refresh-interval-ms:5000}")
+    public void scheduledRefresh() {
+        refresh(snapshot.get());
+    }
+
+    public StatsData refresh() {
+        return refresh(snapshot.get());
+    }
+
+    // Count a product write, the snapshot is dropped once the threshold is reached
+    public void recordWrite() {
+        if (pendingWrites.incrementAndGet() >= writeThreshold) {
+            pendingWrites.set(0);
+            snapshot.set(null);
+        }
+    }
+
+    private StatsData refresh(Snapshot seen) {
+        refreshLock.lock();
+        try {
+            // Another thread refreshed while this one was waiting for the lock
+            Snapshot current = snapshot.get();
+            if (current != null && current != seen && !current.isStale()) {
+                return current.stats();
+            }
+            pendingWrites.set(0);
+            StatsData stats = refreshTimer.record(dashboardService::getStats);
+            if (isComplete(stats)) {
+                snapshot.set(new Snapshot(stats, Instant.now(), maxStalenessMs));
+                return stats;
+            }
+            // Keep serving the complete snapshot while it is fresh, the next refresh retries the missing sections
+            Snapshot latest = snapshot.get();
+            if (latest != null && isComplete(latest.stats()) && !latest.isStale()) {
+                return latest.stats();
+            }
+            snapshot.set(new Snapshot(stats, Instant.now(), partialMaxStalenessMs));
+            return stats;
+        } finally {
+            refreshLock.unlock();
+        }
+    }
+
+    private static boolean isComplete(StatsData stats) {
+        return stats.summary() != null && stats.categoriesDistribution() != null && stats.categoriesMovement() != null
+                && stats.movementsLast24Hours() != null && stats.movementsLast7Days() != null;
+    }
+
+    private record Snapshot(StatsData stats, Instant createdAt, long maxStalenessMs) {
+        boolean isStale() {
+            return Duration.between(createdAt, Instant.now()).toMillis() > maxStalenessMs;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package org.example.imsbackend.components;
+
+import lombok.RequiredArgsConstructor;
+import org.example.imsbackend.dto.StatsData;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Pushes dashboard stats to {@code /topic/dashboard}. Writes only mark the stats dirty, the flush runs once per
+ * coalescing window so a burst of writes results in a single push. Only the sections that changed since the last push
+ * are sent, the other sections are null.
+ */
+@Component
+@RequiredArgsConstructor
+public class DashboardStatsPublisher {
+    public static final String TOPIC = "/topic/dashboard";
+
+    private final DashboardStatsCache dashboardStatsCache;
+    private final SimpMessagingTemplate messagingTemplate;
+
+    private final AtomicBoolean dirty = new AtomicBoolean();
+    private StatsData lastPublished = StatsData.EMPTY;
+
+    public void markDirty() {
+        dirty.set(true);
+    }
+
+    @Scheduled(fixedDelayString = "${ims.dashboard.push.coalesce-window-ms:1000}")
+    public synchronized void flush() {
+        if (!dirty.getAndSet(false)) {
+            return;
+        }
+        StatsData current = dashboardStatsCache.refresh();
+        StatsData delta = new StatsData(
+                changed(lastPublished.summary(), current.summary()),
+                changed(lastPublished.categoriesDistribution(), current.categoriesDistribution()),
+                changed(lastPublished.categoriesMovement(), current.categoriesMovement()),
+                changed(lastPublished.movementsLast24Hours(), current.movementsLast24Hours()),
+                changed(lastPublished.movementsLast7Days(), current.movementsLast7Days()));
+        if (delta.equals(StatsData.EMPTY)) {
+            return;
+        }
+        messagingTemplate.convertAndSend(TOPIC, delta);
+        lastPublished = merge(lastPublished, current);
+    }
+
+    private static <T> T changed(T previous, T current) {
+        return Objects.equals(previous, current) ? null : current;
+    }
+
+    private static <T> T orPrevious(T current, T previous) {
+        return current != null ? current : previous;
+    }
+
+    // A section that timed out is null in the refreshed stats, keep the last published value for it
+    private static StatsData merge(StatsData previous, StatsData current) {
+        return new StatsData(
+                orPrevious(current.summary(), previous.summary()),
+                orPrevious(current.categoriesDistribution(), previous.categoriesDistribution()),
+                orPrevious(current.categoriesMovement(), previous.categoriesMovement()),
+                orPrevious(current.movementsLast24Hours(), previous.movementsLast24Hours()),
+                orPrevious(current.movementsLast7Days(), previous.movementsLast7Days()));
+    }
+}
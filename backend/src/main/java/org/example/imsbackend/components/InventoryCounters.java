@@ -0,0 +1,148 @@
+package org.example.imsbackend.components;
+
+import lombok.RequiredArgsConstructor;
+import org.example.imsbackend.dto.CategoryInventory;
+import org.example.imsbackend.enums.Category;
+import org.example.imsbackend.models.Product;
+import org.example.imsbackend.repositories.DashboardStatsRepository;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * In-memory per-category product count, stock and inventory value kept up to date with deltas from the product
+ * write paths. Counters are striped adders so concurrent writers never contend, and they are periodically rebuilt
+ * from the database to correct any drift (e.g. writes that bypass the controller). Deltas applied while a rebuild
+ * queries the database are also kept in a side log and replayed onto the rebuilt counters before they are swapped in.
+ * Writers share the read side of a lock, only that swap takes the write side.
+ */
+@Component
+@RequiredArgsConstructor
+public class InventoryCounters {
+    private final DashboardStatsRepository dashboardStatsRepository;
+
+    private final AtomicReference<Map<Category, CategoryCounters>> counters = new AtomicReference<>();
+    private final StampedLock swapLock = new StampedLock();
+    // Deltas applied since the running reconcile started, null when none is running
+    private Queue<Delta> reconcileLog;
+
+    public void productCreated(Product product) {
+        apply(product, 1);
+    }
+
+    public void productUpdated(Product before, Product after) {
+        apply(before, -1);
+        apply(after, 1);
+    }
+
+    public void productDeleted(Product product) {
+        apply(product, -1);
+    }
+
+    public List<CategoryInventory> snapshot() {
+        if (counters.get() == null) {
+            reconcile();
+        }
+        Map<Category, CategoryCounters> snapshot = counters.get();
+        return Arrays.stream(Category.values())
+                .map(category -> snapshot.get(category).toInventory(category))
+                .toList();
+    }
+
+    // Rebuild the counters from the database. A change committed right before the query starts may be both in the
+    // result and in the log, the next run corrects it
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelayString = "${ims.dashboard.counters.reconcile-interval-ms:60000}",
+            initialDelayString = "${ims.dashboard.counters.reconcile-interval-ms:60000}")
+    public synchronized void reconcile() {
+        Queue<Delta> log = new ConcurrentLinkedQueue<>();
+        swap(() -> reconcileLog = log);
+        Map<Category, CategoryCounters> fresh = emptyCounters();
+        try {
+            for (CategoryInventory inventory : dashboardStatsRepository.inventoryByCategory()) {
+                CategoryCounters categoryCounters = fresh.get(inventory.category());
+                categoryCounters.products.add(inventory.products());
+                categoryCounters.stock.add(inventory.stock());
+                categoryCounters.value.add(inventory.value());
+            }
+        } catch (RuntimeException e) {
+            swap(() -> reconcileLog = null);
+            throw e;
+        }
+        swap(() -> {
+            log.forEach(delta -> delta.applyTo(fresh));
+            counters.set(fresh);
+            reconcileLog = null;
+        });
+    }
+
+    private void swap(Runnable change) {
+        long stamp = swapLock.writeLock();
+        try {
+            change.run();
+        } finally {
+            swapLock.unlockWrite(stamp);
+        }
+    }
+
+    private void apply(Product product, int sign) {
+        if (product == null || product.getCategory() == null) {
+            return;
+        }
+        long stock = product.getStock() != null ? product.getStock() : 0;
+        double price = product.getPrice() != null ? product.getPrice() : 0;
+        Delta delta = new Delta(product.getCategory(), sign, sign * stock, sign * price * stock);
+        long stamp = swapLock.readLock();
+        try {
+            Queue<Delta> log = reconcileLog;
+            if (log != null) {
+                log.add(delta);
+            }
+            Map<Category, CategoryCounters> current = counters.get();
+            if (current != null) {
+                delta.applyTo(current); // Not loaded yet otherwise, the first reconcile reads the change from the database
+            }
+        } finally {
+            swapLock.unlockRead(stamp);
+        }
+    }
+
+    private static Map<Category, CategoryCounters> emptyCounters() {
+        Map<Category, CategoryCounters> map = new EnumMap<>(Category.class);
+        for (Category category : Category.values()) {
+            map.put(category, new CategoryCounters());
+        }
+        return map;
+    }
+
+    private record Delta(Category category, int products, long stock, double value) {
+        private void applyTo(Map<Category, CategoryCounters> counters) {
+            CategoryCounters categoryCounters = counters.get(category);
+            categoryCounters.products.add(products);
+            categoryCounters.stock.add(stock);
+            categoryCounters.value.add(value);
+        }
+    }
+
+    private static class CategoryCounters {
+        private final LongAdder products = new LongAdder();
+        private final LongAdder stock = new LongAdder();
+        private final DoubleAdder value = new DoubleAdder();
+
+        private CategoryInventory toInventory(Category category) {
+            return new CategoryInventory(category, products.sum(), stock.sum(), value.sum());
+        }
+    }
+}
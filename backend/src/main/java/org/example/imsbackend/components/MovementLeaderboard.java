@@ -0,0 +1,198 @@
+package org.example.imsbackend.components;
+
+import lombok.RequiredArgsConstructor;
+import org.example.imsbackend.dto.HourlyCount;
+import org.example.imsbackend.dto.StatsData;
+import org.example.imsbackend.enums.LeaderboardDimension;
+import org.example.imsbackend.models.StockMovement;
+import org.example.imsbackend.repositories.StockMovementRollupRepository;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Username and product movement counts of the last 24 hours kept in a ring of hourly buckets, updated as movements are
+ * saved. Top-N reads merge the buckets of the window and select the entries with a heap bounded to N, so open-ended
+ * leaderboards over the hot window never hit the database. Windows are resolved to whole hours like the rollups, and
+ * the ring is periodically rebuilt from the database to pick up writes from other instances. Movements recorded while
+ * a rebuild queries the database are also kept in a side log and replayed onto the rebuilt ring before it is swapped
+ * in, recorders share the read side of a lock and only that swap takes the write side.
+ */
+@Component
+@RequiredArgsConstructor
+public class MovementLeaderboard {
+    public static final int HOURS = 24;
+    private static final List<LeaderboardDimension> DIMENSIONS = List.of(LeaderboardDimension.USERNAME, LeaderboardDimension.PRODUCT);
+
+    private final StockMovementRollupRepository stockMovementRollupRepository;
+
+    private final AtomicReference<AtomicReferenceArray<HourBucket>> ring = new AtomicReference<>();
+    private final StampedLock swapLock = new StampedLock();
+    // Movements recorded since the running reconcile started, null when none is running
+    private Queue<StockMovement> reconcileLog;
+
+    public void record(StockMovement movement) {
+        if (movement == null || movement.getDate() == null) {
+            return;
+        }
+        long stamp = swapLock.readLock();
+        try {
+            Queue<StockMovement> log = reconcileLog;
+            if (log != null) {
+                log.add(movement);
+            }
+            AtomicReferenceArray<HourBucket> current = ring.get();
+            if (current != null) {
+                add(current, movement); // Not loaded yet otherwise, the first reconcile reads the movement from the database
+            }
+        } finally {
+            swapLock.unlockRead(stamp);
+        }
+    }
+
+    // Empty when the window is not covered by the ring, the caller then reads the database
+    public Optional<List<StatsData.ObjectCount>> top(LeaderboardDimension dimension, LocalDateTime from, int limit) {
+        AtomicReferenceArray<HourBucket> current = ring.get();
+        long currentHour = epochHour(LocalDateTime.now());
+        long firstHour = epochHour(from);
+        if (current == null || !DIMENSIONS.contains(dimension) || firstHour <= currentHour - HOURS) {
+            return Optional.empty();
+        }
+        Map<String, Long> totals = new HashMap<>();
+        Map<String, String> labels = new HashMap<>();
+        for (int i = 0; i < HOURS; i++) {
+            HourBucket bucket = current.get(i);
+            if (bucket != null && bucket.hour >= firstHour && bucket.hour <= currentHour) {
+                bucket.tallies.get(dimension).forEach((key, tally) -> {
+                    totals.merge(key, tally.count.sum(), Long::sum);
+                    labels.put(key, tally.label);
+                });
+            }
+        }
+        // Min-heap of the best entries seen so far, the head is evicted when it grows past the limit
+        Comparator<Map.Entry<String, Long>> ranking = Map.Entry.<String, Long>comparingByValue()
+                .thenComparing(entry -> labels.get(entry.getKey()), Comparator.reverseOrder());
+        PriorityQueue<Map.Entry<String, Long>> heap = new PriorityQueue<>(limit + 1, ranking);
+        for (Map.Entry<String, Long> entry : totals.entrySet()) {
+            heap.offer(entry);
+            if (heap.size() > limit) {
+                heap.poll();
+            }
+        }
+        return Optional.of(heap.stream()
+                .sorted(ranking.reversed())
+                .map(entry -> new StatsData.ObjectCount(labels.get(entry.getKey()), entry.getValue()))
+                .toList());
+    }
+
+    // Rebuild the ring from the database. A movement committed right before the queries start may be both in the
+    // result and in the log, the next run corrects it
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelayString = "${ims.dashboard.leaderboard.reconcile-interval-ms:60000}",
+            initialDelayString = "${ims.dashboard.leaderboard.reconcile-interval-ms:60000}")
+    public synchronized void reconcile() {
+        Queue<StockMovement> log = new ConcurrentLinkedQueue<>();
+        swap(() -> reconcileLog = log);
+        LocalDateTime since = LocalDateTime.now().truncatedTo(ChronoUnit.HOURS).minusHours(HOURS - 1);
+        AtomicReferenceArray<HourBucket> fresh = new AtomicReferenceArray<>(HOURS);
+        try {
+            for (LeaderboardDimension dimension : DIMENSIONS) {
+                for (HourlyCount count : stockMovementRollupRepository.hourlyCountsSince(dimension, since)) {
+                    HourBucket bucket = bucketFor(fresh, epochHour(count.hour()));
+                    if (bucket != null) {
+                        bucket.add(dimension, count.key(), count.label(), count.count());
+                    }
+                }
+            }
+        } catch (RuntimeException e) {
+            swap(() -> reconcileLog = null);
+            throw e;
+        }
+        swap(() -> {
+            log.forEach(movement -> add(fresh, movement));
+            ring.set(fresh);
+            reconcileLog = null;
+        });
+    }
+
+    private void swap(Runnable change) {
+        long stamp = swapLock.writeLock();
+        try {
+            change.run();
+        } finally {
+            swapLock.unlockWrite(stamp);
+        }
+    }
+
+    private static void add(AtomicReferenceArray<HourBucket> buckets, StockMovement movement) {
+        HourBucket bucket = bucketFor(buckets, epochHour(movement.getDate()));
+        if (bucket == null) {
+            return;
+        }
+        bucket.add(LeaderboardDimension.USERNAME, movement.getUsername(), movement.getUsername(), 1);
+        if (movement.getProduct() != null && movement.getProduct().getProductId() != null) {
+            bucket.add(LeaderboardDimension.PRODUCT, movement.getProduct().getProductId().toString(), movement.getProduct().getName(), 1);
+        }
+    }
+
+    private static HourBucket bucketFor(AtomicReferenceArray<HourBucket> buckets, long hour) {
+        int index = Math.floorMod(hour, HOURS);
+        while (true) {
+            HourBucket bucket = buckets.get(index);
+            if (bucket != null && bucket.hour == hour) {
+                return bucket;
+            }
+            if (bucket != null && bucket.hour > hour) {
+                return null; // Older than the window
+            }
+            HourBucket fresh = new HourBucket(hour);
+            if (buckets.compareAndSet(index, bucket, fresh)) {
+                return fresh;
+            }
+        }
+    }
+
+    private static long epochHour(LocalDateTime dateTime) {
+        return dateTime.toEpochSecond(ZoneOffset.UTC) / 3600;
+    }
+
+    private static class HourBucket {
+        private final long hour;
+        private final Map<LeaderboardDimension, Map<String, Tally>> tallies = new EnumMap<>(LeaderboardDimension.class);
+
+        HourBucket(long hour) {
+            this.hour = hour;
+            DIMENSIONS.forEach(dimension -> tallies.put(dimension, new ConcurrentHashMap<>()));
+        }
+
+        void add(LeaderboardDimension dimension, String key, String label, long count) {
+            Tally tally = tallies.get(dimension).computeIfAbsent(key, k -> new Tally());
+            tally.label = label;
+            tally.count.add(count);
+        }
+    }
+
+    private static class Tally {
+        private volatile String label;
+        private final LongAdder count = new LongAdder();
+    }
+}
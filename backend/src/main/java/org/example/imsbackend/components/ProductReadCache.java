@@ -0,0 +1,151 @@
+package org.example.imsbackend.components;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.example.imsbackend.dto.ProductFilter;
+import org.example.imsbackend.enums.Category;
+import org.example.imsbackend.models.Product;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Caffeine (W-TinyLFU) caches for the public product reads. Search pages are keyed by the normalized filter and
+ * weighed by the number of products they hold. A product write evicts the details of that product and every cached
+ * search whose filter matches the product before or after the write, so unrelated searches stay cached. Evictions
+ * run after commit when the write is part of a transaction. Every eviction also moves the catalogue version, which
+ * identifies the state of the whole catalogue for conditional search requests. Details are loaded atomically, so an
+ * eviction waits for a running load of that product and removes what it loaded. A search page whose load overlapped
+ * an eviction is dropped after it is returned, the eviction may not have seen it.
+ */
+@Component
+@RequiredArgsConstructor
+public class ProductReadCache {
+    private final MeterRegistry meterRegistry;
+
+    @Value("${ims.products.cache.search.max-weight:100000}")
+    private long searchMaxWeight;
+    @Value("${ims.products.cache.details.max-size:10000}")
+    private long detailsMaxSize;
+
+    private Cache<SearchKey, Page<Product>> searches;
+    private Cache<UUID, Product> details;
+
+    // Versions restart with the process, the start time keeps them from repeating across restarts and instances
+    private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+    private final AtomicLong catalogueVersion = new AtomicLong();
+    // Moved before every eviction, unlike the catalogue version which is moved after it
+    private final AtomicLong evictions = new AtomicLong();
+
+    @PostConstruct
+    void init() {
+        searches = Caffeine.newBuilder()
+                .maximumWeight(searchMaxWeight)
+                .weigher((SearchKey key, Page<Product> page) -> page.getNumberOfElements() + 1)
+                .recordStats()
+                .build();
+        details = Caffeine.newBuilder()
+                .maximumSize(detailsMaxSize)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, searches, "productSearch");
+        CaffeineCacheMetrics.monitor(meterRegistry, details, "productDetails");
+        Gauge.builder("ims.products.cache.hit.ratio", searches, cache -> cache.stats().hitRate())
+                .tag("cache", "productSearch")
+                .register(meterRegistry);
+        Gauge.builder("ims.products.cache.hit.ratio", details, cache -> cache.stats().hitRate())
+                .tag("cache", "productDetails")
+                .register(meterRegistry);
+    }
+
+    public Page<Product> search(ProductFilter filter, Supplier<Page<Product>> loader) {
+        SearchKey searchKey = SearchKey.of(filter);
+        long evicted = evictions.get();
+        Page<Product> page = searches.get(searchKey, key -> loader.get());
+        if (evictions.get() != evicted) {
+            searches.asMap().remove(searchKey, page);
+        }
+        return page;
+    }
+
+    // Only existing products are cached
+    public Optional<Product> product(UUID id, Function<UUID, Optional<Product>> loader) {
+        return Optional.ofNullable(details.get(id, key -> loader.apply(key).orElse(null)));
+    }
+
+    // before is null on create or when the product was not found, after is null on delete
+    public void productWritten(UUID id, Product before, Product after) {
+        Runnable evict = () -> {
+            evictions.incrementAndGet();
+            details.invalidate(id);
+            searches.asMap().keySet().removeIf(key -> key.matches(before) || key.matches(after));
+            // Moved after the eviction, a reader that sees the new version never gets a stale cached page
+            catalogueVersion.incrementAndGet();
+        };
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    evict.run();
+                }
+            });
+        } else {
+            evict.run();
+        }
+    }
+
+    public void invalidateAll() {
+        evictions.incrementAndGet();
+        searches.invalidateAll();
+        details.invalidateAll();
+        catalogueVersion.incrementAndGet();
+    }
+
+    public String catalogueVersion() {
+        return epoch + "-" + catalogueVersion.get();
+    }
+
+    private record SearchKey(String name, List<Category> categories, Double minPrice, Double maxPrice, String sort,
+                             String direction, int page, int size) {
+        static SearchKey of(ProductFilter filter) {
+            String name = filter.getName() != null && !filter.getName().isEmpty() ? filter.getName().toLowerCase() : null;
+            List<Category> categories = filter.getCategories() != null
+                    ? filter.getCategories().stream().distinct().sorted().toList()
+                    : List.of();
+            return new SearchKey(name, categories, filter.getMinPrice(), filter.getMaxPrice(), filter.getSort().toUpperCase(),
+                    filter.getDirection().toUpperCase(), filter.getPage(), filter.getSize());
+        }
+
+        // Same predicates as the search, a product outside them cannot change the cached page
+        boolean matches(Product product) {
+            if (product == null) {
+                return false;
+            }
+            if (name != null && (product.getName() == null || !product.getName().toLowerCase().contains(name))) {
+                return false;
+            }
+            if (!categories.isEmpty() && !categories.contains(product.getCategory())) {
+                return false;
+            }
+            Double price = product.getPrice();
+            if (minPrice != null && (price == null || price < minPrice)) {
+                return false;
+            }
+            return maxPrice == null || (price != null && price <= maxPrice);
+        }
+    }
+}
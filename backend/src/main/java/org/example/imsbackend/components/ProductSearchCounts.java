@@ -0,0 +1,55 @@
+package org.example.imsbackend.components;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PostConstruct;
+import org.example.imsbackend.dto.ProductFilter;
+import org.example.imsbackend.enums.Category;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * Exact product search totals cached per normalized filter, so count-free search pages can still offer a total
+ * without a COUNT query on every request. Entries expire after the TTL and the whole cache is cleared on product writes.
+ */
+@Component
+public class ProductSearchCounts {
+    @Value("${ims.products.search.count-cache.ttl-ms:30000}")
+    private long ttlMs;
+    @Value("${ims.products.search.count-cache.max-size:10000}")
+    private long maxSize;
+
+    private Cache<Key, Long> counts;
+
+    @PostConstruct
+    void init() {
+        counts = Caffeine.newBuilder()
+                .expireAfterWrite(Duration.ofMillis(ttlMs))
+                .maximumSize(maxSize)
+                .build();
+    }
+
+    public long count(ProductFilter filter, Supplier<Long> loader) {
+        return counts.get(Key.of(filter), key -> loader.get());
+    }
+
+    public void invalidateAll() {
+        counts.invalidateAll();
+    }
+
+    // Pagination and sorting do not change the total, only the predicates are part of the key
+    private record Key(String name, Set<Category> categories, Double minPrice, Double maxPrice) {
+        static Key of(ProductFilter filter) {
+            String name = filter.getName() != null && !filter.getName().isEmpty() ? filter.getName().toLowerCase() : null;
+            Set<Category> categories = filter.getCategories() != null && !filter.getCategories().isEmpty()
+                    ? EnumSet.copyOf(filter.getCategories())
+                    : null;
+            return new Key(name, categories, filter.getMinPrice(), filter.getMaxPrice());
+        }
+    }
+}
@@ -0,0 +1,560 @@
+package org.example.imsbackend.components;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.example.imsbackend.dto.ProductFilter;
+import org.example.imsbackend.enums.Category;
+import org.example.imsbackend.enums.ProductSort;
+import org.example.imsbackend.models.Product;
+import org.example.imsbackend.repositories.ProductRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Optional in-memory index answering {@link ProductFilter} searches without the database. Documents are numbered in
+ * insertion order; names are indexed as lowercase trigram and bigram postings, categories as bitsets, prices as a
+ * sorted primitive array and every sort key as a pre-sorted document list, so a page of a broad or unfiltered search
+ * walks that list instead of sorting the matches. Updates delete the old document and append a new one to a small
+ * unsorted tail. Once the tail or the deleted documents grow too large a new index is built in the background and
+ * swapped in; changes made while a build runs, including the one at startup, are also logged and replayed onto the
+ * new index before the swap. It is kept up to date by the product write paths.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ProductSearchIndex {
+    private final ProductRepository productRepository;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${ims.products.search.index.enabled:false}")
+    private boolean enabled;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private Index index;
+    // Changes made since the running build started, null when no build runs. Guarded by the write lock, a change
+    // already read by the build is replayed again, which leaves the same document
+    private List<Consumer<Index>> pending;
+
+    private final ExecutorService compactor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "product-index-compactor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private Timer queryTimer;
+
+    @PostConstruct
+    void registerMetrics() {
+        queryTimer = Timer.builder("ims.products.search.index.query").publishPercentiles(0.5, 0.99).register(meterRegistry);
+        Gauge.builder("ims.products.search.index.documents", this, searchIndex -> searchIndex.read(Index::documents))
+                .register(meterRegistry);
+        Gauge.builder("ims.products.search.index.memory", this, searchIndex -> searchIndex.read(Index::estimatedBytes))
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    void stop() {
+        compactor.shutdownNow();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        if (!enabled) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            if (pending != null) {
+                return; // A build is already running
+            }
+            pending = new ArrayList<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        build(() -> Index.build(productRepository.findAll()));
+    }
+
+    // Empty while the index is disabled or not built yet, the caller then queries the database
+    public Optional<Page<Product>> search(ProductFilter filter, ProductSort sort, boolean descending) {
+        lock.readLock().lock();
+        try {
+            if (index == null) {
+                return Optional.empty();
+            }
+            return Optional.of(queryTimer.record(() -> index.search(filter, sort, descending)));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void productSaved(Product product) {
+        write(current -> {
+            current.remove(product.getId());
+            current.add(product);
+        });
+    }
+
+    public void productDeleted(Product product) {
+        write(current -> current.remove(product.getId()));
+    }
+
+    private void write(Consumer<Index> change) {
+        lock.writeLock().lock();
+        try {
+            if (pending != null) {
+                pending.add(change);
+            }
+            if (index == null) {
+                return; // Not built yet, the change is replayed onto the build or read by it from the database
+            }
+            change.accept(index);
+            if (pending == null && index.needsCompaction()) {
+                pending = new ArrayList<>();
+                compactor.execute(this::compact);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Runs without the lock, pending was set by the caller and collects the changes made meanwhile
+    private void build(Supplier<Index> builder) {
+        Index fresh;
+        try {
+            fresh = builder.get();
+        } catch (RuntimeException e) {
+            lock.writeLock().lock();
+            try {
+                pending = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            throw e;
+        }
+        lock.writeLock().lock();
+        try {
+            pending.forEach(change -> change.accept(fresh));
+            pending = null;
+            index = fresh;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void compact() {
+        try {
+            build(() -> Index.compact(snapshot()));
+        } catch (RuntimeException e) {
+            log.warn("Product search index compaction failed, the current index is kept", e);
+        }
+    }
+
+    private Snapshot snapshot() {
+        lock.readLock().lock();
+        try {
+            return index.snapshot();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private double read(ToDoubleFunction<Index> metric) {
+        lock.readLock().lock();
+        try {
+            return index != null ? metric.applyAsDouble(index) : 0;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static class Index {
+        private static final int MIN_TAIL_COMPACTION = 1024;
+
+        private Product[] docs;
+        private String[] names;
+        private int size;
+        private int deleted;
+        private long nameBytes;
+        private final Map<UUID, Integer> docIds = new HashMap<>();
+        private final BitSet live = new BitSet();
+        // Trigram postings, and bigram postings (plus one letter names) for shorter terms
+        private final Map<String, IntList> postings = new HashMap<>();
+        private final Map<String, IntList> shortPostings = new HashMap<>();
+        private final Map<Category, BitSet> categories = new EnumMap<>(Category.class);
+        // Documents of the last build with a price, sorted by price
+        private double[] prices = new double[0];
+        private int[] priceDocs = new int[0];
+        // Documents of the last build in ascending order of each sort key, read backwards for descending pages
+        private final Map<ProductSort, int[]> sortedDocs = new EnumMap<>(ProductSort.class);
+        // Documents from builtSize on were appended since the last build and form the unsorted tail
+        private int builtSize;
+
+        private Index(int capacity) {
+            docs = new Product[Math.max(16, capacity)];
+            names = new String[docs.length];
+        }
+
+        static Index build(Collection<Product> products) {
+            Index built = new Index(products.size());
+            products.forEach(built::add);
+            built.sortPrices();
+            built.sortKeys();
+            built.builtSize = built.size;
+            return built;
+        }
+
+        void add(Product product) {
+            int doc = size++;
+            if (doc == docs.length) {
+                docs = Arrays.copyOf(docs, docs.length * 2);
+                names = Arrays.copyOf(names, docs.length);
+            }
+            String name = product.getName() != null ? product.getName().toLowerCase() : "";
+            docs[doc] = product;
+            names[doc] = name;
+            nameBytes += 40 + name.length();
+            docIds.put(product.getId(), doc);
+            live.set(doc);
+            for (String trigram : grams(name, 3)) {
+                postings.computeIfAbsent(trigram, key -> new IntList()).add(doc);
+            }
+            for (String gram : name.length() == 1 ? Set.of(name) : grams(name, 2)) {
+                shortPostings.computeIfAbsent(gram, key -> new IntList()).add(doc);
+            }
+            if (product.getCategory() != null) {
+                categories.computeIfAbsent(product.getCategory(), key -> new BitSet()).set(doc);
+            }
+        }
+
+        void remove(UUID id) {
+            Integer doc = docIds.remove(id);
+            if (doc != null) {
+                live.clear(doc);
+                docs[doc] = null;
+                deleted++;
+            }
+        }
+
+        boolean needsCompaction() {
+            return size - builtSize > Math.max(MIN_TAIL_COMPACTION, size / 64) || deleted > Math.max(MIN_TAIL_COMPACTION, size / 4);
+        }
+
+        // Taken with the read lock held, documents removed afterwards may still be read by compact()
+        Snapshot snapshot() {
+            return new Snapshot(docs, (BitSet) live.clone(), builtSize, size, sortedDocs);
+        }
+
+        // Rebuilds the live documents of a snapshot, every sort order is the previous one merged with the sorted tail
+        static Index compact(Snapshot previous) {
+            Product[] products = new Product[previous.size()];
+            List<Product> live = new ArrayList<>(previous.live().cardinality());
+            previous.live().stream().forEach(doc -> {
+                products[doc] = previous.docs()[doc];
+                if (products[doc] != null) {
+                    live.add(products[doc]);
+                }
+            });
+            Index built = new Index(live.size());
+            live.forEach(built::add);
+            built.sortPrices();
+            for (ProductSort sort : ProductSort.values()) {
+                Comparator<Product> order = sort.comparator(false);
+                List<Product> tail = Arrays.stream(products, previous.builtSize(), products.length)
+                        .filter(Objects::nonNull)
+                        .sorted(order)
+                        .toList();
+                int[] sorted = new int[built.size];
+                int n = 0;
+                int t = 0;
+                for (int doc : previous.sortedDocs().get(sort)) {
+                    if (products[doc] == null) {
+                        continue;
+                    }
+                    while (t < tail.size() && order.compare(tail.get(t), products[doc]) < 0) {
+                        sorted[n++] = built.docIds.get(tail.get(t++).getId());
+                    }
+                    sorted[n++] = built.docIds.get(products[doc].getId());
+                }
+                while (t < tail.size()) {
+                    sorted[n++] = built.docIds.get(tail.get(t++).getId());
+                }
+                built.sortedDocs.put(sort, sorted);
+            }
+            built.builtSize = built.size;
+            return built;
+        }
+
+        private void sortPrices() {
+            int[] sorted = live.stream()
+                    .filter(doc -> docs[doc].getPrice() != null)
+                    .boxed()
+                    .sorted((a, b) -> Double.compare(docs[a].getPrice(), docs[b].getPrice()))
+                    .mapToInt(Integer::intValue)
+                    .toArray();
+            priceDocs = sorted;
+            prices = new double[sorted.length];
+            for (int i = 0; i < sorted.length; i++) {
+                prices[i] = docs[sorted[i]].getPrice();
+            }
+        }
+
+        private void sortKeys() {
+            for (ProductSort sort : ProductSort.values()) {
+                Comparator<Product> order = sort.comparator(false);
+                Integer[] sorted = live.stream().boxed().toArray(Integer[]::new);
+                Arrays.parallelSort(sorted, (a, b) -> order.compare(docs[a], docs[b]));
+                sortedDocs.put(sort, Arrays.stream(sorted).mapToInt(Integer::intValue).toArray());
+            }
+        }
+
+        Page<Product> search(ProductFilter filter, ProductSort sort, boolean descending) {
+            BitSet matches = matches(filter);
+            BitSet accepted = matches != null ? matches : live;
+            Pageable pageable = PageRequest.of(filter.getPage(), filter.getSize());
+            int total = matches != null ? matches.cardinality() : docIds.size();
+            long end = Math.min(total, pageable.getOffset() + filter.getSize());
+            if (pageable.getOffset() >= end) {
+                return new PageImpl<>(List.of(), pageable, total);
+            }
+            Comparator<Product> order = sort.comparator(descending);
+            // Walking the sorted documents visits about end * documents / total of them until the page is complete,
+            // selecting from the matches visits all of them
+            List<Product> first = end * docIds.size() <= (long) total * total
+                    ? walkSorted(accepted, sort, descending, (int) end, order)
+                    : selectFirst(accepted, 0, (int) end, order);
+            return new PageImpl<>(first.subList((int) pageable.getOffset(), first.size()), pageable, total);
+        }
+
+        // Null when the filter matches every live document
+        private BitSet matches(ProductFilter filter) {
+            BitSet matches = null;
+            if (filter.getCategories() != null && !filter.getCategories().isEmpty()) {
+                BitSet inCategories = new BitSet();
+                filter.getCategories().forEach(category -> {
+                    BitSet docsInCategory = categories.get(category);
+                    if (docsInCategory != null) {
+                        inCategories.or(docsInCategory);
+                    }
+                });
+                matches = inCategories;
+            }
+            if (filter.getMinPrice() != null || filter.getMaxPrice() != null) {
+                BitSet inRange = priceRange(filter.getMinPrice(), filter.getMaxPrice());
+                if (matches != null) {
+                    inRange.and(matches);
+                }
+                matches = inRange;
+            }
+            if (matches != null) {
+                matches.and(live);
+            }
+            if (filter.getName() != null && !filter.getName().isEmpty()) {
+                return matchName(matches != null ? matches : live, filter.getName().toLowerCase());
+            }
+            return matches;
+        }
+
+        // The first end documents of the build in sort order merged with the first end documents of the tail
+        private List<Product> walkSorted(BitSet accepted, ProductSort sort, boolean descending, int end, Comparator<Product> order) {
+            int[] sorted = sortedDocs.get(sort);
+            List<Product> built = new ArrayList<>(end);
+            for (int i = 0; i < sorted.length && built.size() < end; i++) {
+                int doc = sorted[descending ? sorted.length - 1 - i : i];
+                if (accepted.get(doc)) {
+                    built.add(docs[doc]);
+                }
+            }
+            List<Product> appended = selectFirst(accepted, builtSize, end, order);
+            if (appended.isEmpty()) {
+                return built;
+            }
+            List<Product> merged = new ArrayList<>(end);
+            int b = 0;
+            int a = 0;
+            while (merged.size() < end && (b < built.size() || a < appended.size())) {
+                if (a == appended.size() || (b < built.size() && order.compare(built.get(b), appended.get(a)) <= 0)) {
+                    merged.add(built.get(b++));
+                } else {
+                    merged.add(appended.get(a++));
+                }
+            }
+            return merged;
+        }
+
+        // Bounded max-heap keeps the first end accepted documents from fromDoc on in sort order
+        private List<Product> selectFirst(BitSet accepted, int fromDoc, int end, Comparator<Product> order) {
+            PriorityQueue<Product> first = new PriorityQueue<>(end + 1, order.reversed());
+            for (int doc = accepted.nextSetBit(fromDoc); doc >= 0; doc = accepted.nextSetBit(doc + 1)) {
+                first.offer(docs[doc]);
+                if (first.size() > end) {
+                    first.poll();
+                }
+            }
+            List<Product> sorted = new ArrayList<>(first);
+            sorted.sort(order);
+            return sorted;
+        }
+
+        // Candidates are live documents. Longer terms are looked up in the shortest posting list of their trigrams and
+        // verified against the name, terms of one or two letters are answered by the bigram postings
+        private BitSet matchName(BitSet candidates, String term) {
+            BitSet named = new BitSet();
+            if (term.length() == 1) {
+                shortPostings.forEach((gram, posting) -> {
+                    if (gram.indexOf(term.charAt(0)) >= 0) {
+                        for (int i = 0; i < posting.size; i++) {
+                            named.set(posting.values[i]);
+                        }
+                    }
+                });
+                named.and(candidates);
+                return named;
+            }
+            IntList shortest = null;
+            for (String gram : grams(term, Math.min(3, term.length()))) {
+                IntList posting = term.length() < 3 ? shortPostings.get(gram) : postings.get(gram);
+                if (posting == null) {
+                    return named;
+                }
+                if (shortest == null || posting.size < shortest.size) {
+                    shortest = posting;
+                }
+            }
+            // A term of two or three letters is a single gram, every document of its posting contains it
+            boolean exact = term.length() <= 3;
+            for (int i = 0; i < shortest.size; i++) {
+                int doc = shortest.values[i];
+                if (candidates.get(doc) && (exact || names[doc].contains(term))) {
+                    named.set(doc);
+                }
+            }
+            return named;
+        }
+
+        private BitSet priceRange(Double minPrice, Double maxPrice) {
+            int from = minPrice != null ? lowerBound(minPrice) : 0;
+            int to = maxPrice != null ? upperBound(maxPrice) : prices.length;
+            BitSet inRange = new BitSet();
+            for (int i = from; i < to; i++) {
+                inRange.set(priceDocs[i]);
+            }
+            for (int doc = builtSize; doc < size; doc++) {
+                Double price = docs[doc] != null ? docs[doc].getPrice() : null;
+                if (price != null && (minPrice == null || price >= minPrice) && (maxPrice == null || price <= maxPrice)) {
+                    inRange.set(doc);
+                }
+            }
+            return inRange;
+        }
+
+        // First position with a price >= value
+        private int lowerBound(double value) {
+            int low = 0;
+            int high = prices.length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (prices[middle] < value) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        // First position with a price > value
+        private int upperBound(double value) {
+            int low = 0;
+            int high = prices.length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (prices[middle] <= value) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        double documents() {
+            return docIds.size();
+        }
+
+        // Rough size of the index structures, the indexed products themselves are not counted
+        double estimatedBytes() {
+            long bytes = 16L * docs.length + nameBytes + 64L * docIds.size() + live.size() / 8;
+            for (IntList posting : postings.values()) {
+                bytes += 64 + 4L * posting.values.length;
+            }
+            for (IntList posting : shortPostings.values()) {
+                bytes += 64 + 4L * posting.values.length;
+            }
+            for (int[] sorted : sortedDocs.values()) {
+                bytes += 4L * sorted.length;
+            }
+            for (BitSet docsInCategory : categories.values()) {
+                bytes += docsInCategory.size() / 8;
+            }
+            return bytes + 12L * prices.length;
+        }
+
+        private static Set<String> grams(String text, int length) {
+            Set<String> grams = new LinkedHashSet<>();
+            for (int i = 0; i + length <= text.length(); i++) {
+                grams.add(text.substring(i, i + length));
+            }
+            return grams;
+        }
+    }
+
+    private record Snapshot(Product[] docs, BitSet live, int builtSize, int size, Map<ProductSort, int[]> sortedDocs) {
+    }
+
+    // Growable primitive int list, document ids are appended in increasing order
+    private static class IntList {
+        private int[] values = new int[4];
+        private int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+    }
+}
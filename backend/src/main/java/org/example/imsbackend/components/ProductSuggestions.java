@@ -0,0 +1,104 @@
+package org.example.imsbackend.components;
+
+import lombok.RequiredArgsConstructor;
+import org.example.imsbackend.dto.ProductNameDTO;
+import org.example.imsbackend.models.Product;
+import org.example.imsbackend.repositories.ProductRepository;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Prefix index over product names for typeahead. Every word start of a lowercase name is a key of a sorted map, so a
+ * lookup is a range scan that stops after K distinct products. Built at startup from an id and name projection and
+ * kept up to date by the product service on every save and delete.
+ */
+@Component
+@RequiredArgsConstructor
+public class ProductSuggestions {
+    private static final char SEPARATOR = '\u0000';
+
+    private final ProductRepository productRepository;
+
+    private final ConcurrentSkipListMap<String, ProductNameDTO> prefixes = new ConcurrentSkipListMap<>();
+    private final Map<UUID, String> names = new ConcurrentHashMap<>();
+
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void rebuild() {
+        clear();
+        productRepository.findAllNames().forEach(product -> put(product.getProductId(), product.getName()));
+    }
+
+    public List<ProductNameDTO> suggest(String query, int limit) {
+        String prefix = query.strip().toLowerCase();
+        List<ProductNameDTO> suggestions = new ArrayList<>(limit);
+        if (prefix.isEmpty()) {
+            return suggestions;
+        }
+        Set<UUID> seen = new HashSet<>();
+        for (Map.Entry<String, ProductNameDTO> entry : prefixes.tailMap(prefix).entrySet()) {
+            if (!entry.getKey().startsWith(prefix) || suggestions.size() == limit) {
+                break;
+            }
+            if (seen.add(entry.getValue().productId())) {
+                suggestions.add(entry.getValue());
+            }
+        }
+        return suggestions;
+    }
+
+    public synchronized void productSaved(Product product) {
+        remove(product.getId());
+        put(product.getId(), product.getName());
+    }
+
+    public synchronized void productDeleted(UUID id) {
+        remove(id);
+    }
+
+    public synchronized void clear() {
+        prefixes.clear();
+        names.clear();
+    }
+
+    private void put(UUID id, String name) {
+        if (id == null || name == null) {
+            return;
+        }
+        ProductNameDTO suggestion = new ProductNameDTO(id, name);
+        names.put(id, name);
+        for (String key : keys(id, name)) {
+            prefixes.put(key, suggestion);
+        }
+    }
+
+    private void remove(UUID id) {
+        String name = names.remove(id);
+        if (name != null) {
+            keys(id, name).forEach(prefixes::remove);
+        }
+    }
+
+    // One key per word start, the id suffix keeps products with the same name apart
+    private static List<String> keys(UUID id, String name) {
+        String lowercase = name.toLowerCase();
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < lowercase.length(); i++) {
+            boolean wordStart = Character.isLetterOrDigit(lowercase.charAt(i))
+                    && (i == 0 || !Character.isLetterOrDigit(lowercase.charAt(i - 1)));
+            if (wordStart) {
+                keys.add(lowercase.substring(i) + SEPARATOR + id);
+            }
+        }
+        return keys;
+    }
+}
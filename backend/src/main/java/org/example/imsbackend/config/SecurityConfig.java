@@ -30,6 +30,10 @@ public class SecurityConfig {
                 .authorizeHttpRequests(auth -> auth
                         .requestMatchers("/ws/**").permitAll()
                         .requestMatchers("/api/v1/products/search").permitAll()
+                        .requestMatchers("/api/v1/products/search/scroll").permitAll()
+                        .requestMatchers("/api/v1/products/search/faceted").permitAll()
+                        .requestMatchers("/api/v1/products/search/relevance").permitAll()
+                        .requestMatchers("/api/v1/products/suggest").permitAll()
                         .requestMatchers("/api/v1/products/*/details").permitAll()
                         .requestMatchers("/actuator/prometheus").permitAll()
                         .requestMatchers("/actuator/health").permitAll()
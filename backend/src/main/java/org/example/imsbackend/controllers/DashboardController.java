@@ -1,16 +1,20 @@
 package org.example.imsbackend.controllers;
 
 import lombok.RequiredArgsConstructor;
+import org.example.imsbackend.components.DashboardStatsCache;
+import org.example.imsbackend.dto.LeaderboardDTO;
+import org.example.imsbackend.dto.LeaderboardFilter;
+import org.example.imsbackend.dto.MovementHistogramDTO;
+import org.example.imsbackend.dto.MovementHistogramFilter;
 import org.example.imsbackend.dto.ProductDTO;
 import org.example.imsbackend.dto.StatsData;
 import org.example.imsbackend.dto.StockMovementFilter;
-import org.example.imsbackend.mappers.ProductMapper;
-import org.example.imsbackend.models.Product;
 import org.example.imsbackend.services.DashboardService;
 import org.springframework.data.domain.Page;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.ModelAttribute;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
@@ -20,15 +24,33 @@ import org.springframework.web.bind.annotation.RestController;
 @RequiredArgsConstructor
 public class DashboardController {
     private final DashboardService dashboardService;
+    private final DashboardStatsCache dashboardStatsCache;
 
     @GetMapping("/stats")
     public ResponseEntity<StatsData> getStats() {
-        return ResponseEntity.ok(dashboardService.getStats());
+        return ResponseEntity.ok(dashboardStatsCache.get());
+    }
+
+    @GetMapping("/movements/histogram")
+    public ResponseEntity<MovementHistogramDTO> getMovementHistogram(@ModelAttribute MovementHistogramFilter filter) {
+        try {
+            return ResponseEntity.ok(dashboardService.getMovementHistogram(filter));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    @GetMapping("/movements/leaderboard")
+    public ResponseEntity<LeaderboardDTO> getLeaderboard(@ModelAttribute LeaderboardFilter filter) {
+        try {
+            return ResponseEntity.ok(dashboardService.getLeaderboard(filter));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
     }
 
     @GetMapping("/bellow-minimum-stock")
     public  ResponseEntity<Page<ProductDTO>> getProductsBelowMinStock(StockMovementFilter filter) {
-        Page<Product> products = dashboardService.getProductsBelowMinStock(filter);
-        return ResponseEntity.ok(products.map(ProductMapper.INSTANCE::toDto));
+        return ResponseEntity.ok(dashboardService.getProductsBelowMinStock(filter));
     }
 }
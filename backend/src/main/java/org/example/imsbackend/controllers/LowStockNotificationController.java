@@ -3,8 +3,6 @@ package org.example.imsbackend.controllers;
 import lombok.RequiredArgsConstructor;
 import org.example.imsbackend.dto.LowStockNotificationDTO;
 import org.example.imsbackend.dto.LowStockNotificationFilter;
-import org.example.imsbackend.mappers.LowStockNotificationMapper;
-import org.example.imsbackend.models.LowStockNotification;
 import org.example.imsbackend.services.LowStockNotificationService;
 import org.springframework.data.domain.Page;
 import org.springframework.http.ResponseEntity;
@@ -25,7 +23,6 @@ public class LowStockNotificationController {
     @GetMapping
     @PreAuthorize("hasAnyRole('role_admin', 'role_employee')")
     public ResponseEntity<Page<LowStockNotificationDTO>> getAllLowStockNotifications(@ModelAttribute final LowStockNotificationFilter filter) {
-        Page<LowStockNotification> lowStockNotifications = lowStockNotificationService.findAll(filter);
-        return ResponseEntity.ok(lowStockNotifications.map(LowStockNotificationMapper.INSTANCE::toDto));
+        return ResponseEntity.ok(lowStockNotificationService.findAll(filter));
     }
 }
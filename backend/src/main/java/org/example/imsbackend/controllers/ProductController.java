@@ -1,19 +1,37 @@
 package org.example.imsbackend.controllers;
 
+import jakarta.annotation.PostConstruct;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 
+import org.example.imsbackend.components.DashboardStatsCache;
+import org.example.imsbackend.components.DashboardStatsPublisher;
+import org.example.imsbackend.components.InventoryCounters;
+import org.example.imsbackend.components.ProductSearchIndex;
+import org.example.imsbackend.dto.BulkResultDTO;
+import org.example.imsbackend.dto.BulkRowResult;
+import org.example.imsbackend.dto.CursorPage;
+import org.example.imsbackend.dto.FacetedProductSearchDTO;
+import org.example.imsbackend.dto.ProductFacets;
 import org.example.imsbackend.dto.ProductDTO;
 import org.example.imsbackend.dto.ProductFilter;
+import org.example.imsbackend.dto.ProductNameDTO;
+import org.example.imsbackend.dto.StockAdjustmentDTO;
+import org.example.imsbackend.enums.BulkRowStatus;
 import org.example.imsbackend.enums.StockMovementAction;
 import org.example.imsbackend.mappers.ProductMapper;
 import org.example.imsbackend.models.LowStockNotification;
 import org.example.imsbackend.models.Product;
 import org.example.imsbackend.models.StockMovement;
 import org.example.imsbackend.services.LowStockNotificationService;
+import org.example.imsbackend.services.ProductBulkService;
 import org.example.imsbackend.services.ProductService;
+import org.example.imsbackend.services.ProductUpdateService;
+import org.example.imsbackend.services.StockCoalescingService;
 import org.example.imsbackend.services.StockMovementService;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.data.domain.Page;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
@@ -22,9 +40,14 @@ import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.Authentication;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @Validated
@@ -35,21 +58,90 @@ public class ProductController {
     private final StockMovementService stockMovementService;
     private final LowStockNotificationService lowStockNotificationService;
     private final SimpMessagingTemplate messagingTemplate;
+    private final InventoryCounters inventoryCounters;
+    private final DashboardStatsCache dashboardStatsCache;
+    private final DashboardStatsPublisher dashboardStatsPublisher;
+    private final ProductSearchIndex productSearchIndex;
+    private final ProductBulkService productBulkService;
+    private final ProductUpdateService productUpdateService;
+    private final StockCoalescingService stockCoalescingService;
 
+    // The ETag is the catalogue version, an unchanged catalogue is answered with 304 before searching
     @GetMapping("/search")
-    public ResponseEntity<Page<ProductDTO>> getAllProductsWithFilter(@ModelAttribute ProductFilter filter) {
-        Page<Product> products = productService.getAllProducts(filter);
-        return ResponseEntity.ok(products.map(ProductMapper.INSTANCE::toDto));
+    public ResponseEntity<Page<ProductDTO>> getAllProductsWithFilter(@ModelAttribute ProductFilter filter, WebRequest request) {
+        String etag = "\"" + productService.catalogueVersion() + "\"";
+        if (request.checkNotModified(etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+        }
+        try {
+            Page<Product> products = productService.getAllProducts(filter);
+            return ResponseEntity.ok()
+                    .eTag(etag)
+                    .cacheControl(CacheControl.noCache())
+                    .body(products.map(ProductMapper.INSTANCE::toDto));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    @GetMapping("/search/faceted")
+    public ResponseEntity<FacetedProductSearchDTO> getAllProductsWithFacets(@ModelAttribute ProductFilter filter) {
+        try {
+            ProductFacets facets = productService.productFacets(filter);
+            Page<Product> products = productService.getAllProducts(filter);
+            return ResponseEntity.ok(new FacetedProductSearchDTO(products.map(ProductMapper.INSTANCE::toDto), facets));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    @GetMapping("/search/scroll")
+    public ResponseEntity<CursorPage<ProductDTO>> scrollProductsWithFilter(@ModelAttribute ProductFilter filter) {
+        try {
+            CursorPage<Product> products = productService.scrollProducts(filter);
+            return ResponseEntity.ok(products.map(ProductMapper.INSTANCE::toDto));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    @GetMapping("/search/relevance")
+    public ResponseEntity<List<ProductDTO>> searchProductsByRelevance(@ModelAttribute ProductFilter filter) {
+        try {
+            List<Product> products = productService.searchProductsByRelevance(filter);
+            return ResponseEntity.ok(products.stream().map(ProductMapper.INSTANCE::toDto).toList());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    @GetMapping("/suggest")
+    public ResponseEntity<List<ProductNameDTO>> suggestProductNames(@RequestParam("q") String query,
+            @RequestParam(value = "limit", defaultValue = "8") int limit) {
+        try {
+            return ResponseEntity.ok(productService.suggestProductNames(query, limit));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
     }
 
     @GetMapping("/{id}/details")
-    public ResponseEntity<ProductDTO> getProductById(@PathVariable("id") String id) {
+    public ResponseEntity<ProductDTO> getProductById(@PathVariable("id") String id, WebRequest request) {
         try {
-            Optional<Product> product = productService.getProductById(UUID.fromString(id));
+            Optional<Product> product = productService.getProductDetails(UUID.fromString(id));
             if (product.isEmpty()) {
                 return ResponseEntity.notFound().build();
             }
-            return ResponseEntity.ok(ProductMapper.INSTANCE.toDto(product.get()));
+            String etag = "\"" + product.get().getId() + "-" + product.get().getVersion() + "\"";
+            long lastModified = product.get().getUpdatedAt() != null ? product.get().getUpdatedAt().toEpochMilli() : -1;
+            if (request.checkNotModified(etag, lastModified)) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+            }
+            return ResponseEntity.ok()
+                    .eTag(etag)
+                    .lastModified(lastModified)
+                    .cacheControl(CacheControl.noCache())
+                    .body(ProductMapper.INSTANCE.toDto(product.get()));
         } catch (IllegalArgumentException e) {
             return ResponseEntity.badRequest().build();
         }
@@ -59,7 +151,8 @@ public class ProductController {
     @PreAuthorize("hasAnyRole('role_admin', 'role_employee')")
     public ResponseEntity<ProductDTO> createProduct(@Valid @RequestBody ProductDTO product, Authentication authentication) {
         String username = authentication.getName();
-        Product savedProduct = productService.saveProduct(ProductMapper.INSTANCE.toEntity(product));
+        Product savedProduct = productService.saveProduct(null, ProductMapper.INSTANCE.toEntity(product));
+        recordInventoryChange(null, savedProduct);
         // Create stock movement for newly created product
         StockMovement stockMovement = StockMovementService.calculateStockMovement(null, savedProduct, StockMovementAction.INSERTED, username);
         stockMovementService.save(stockMovement);
@@ -71,37 +164,88 @@ public class ProductController {
         return ResponseEntity.status(HttpStatus.CREATED).body(ProductMapper.INSTANCE.toDto(savedProduct));
     }
 
+    // Read, movement and write in one transaction, answered with 409 when the product changed since the version sent by
+    // the client or is written concurrently
     @PutMapping("/{id}")
     @PreAuthorize("hasAnyRole('role_admin', 'role_employee')")
     public ResponseEntity<ProductDTO> updateProduct(@PathVariable("id") String id, @Valid @RequestBody ProductDTO product, Authentication authentication) {
         try {
             String username = authentication.getName();
             UUID productId = UUID.fromString(id);
-            Optional<Product> existingProduct = productService.getProductById(productId);
-            if (existingProduct.isPresent()) {
-                Product productToUpdate = ProductMapper.INSTANCE.toEntity(product);
-                productToUpdate.setId(productId);
-                //Update stock movement if stock has changed
-                StockMovement stockMovement = StockMovementService.calculateStockMovement(existingProduct.get(), productToUpdate, StockMovementAction.UPDATED, username);
-                if(stockMovement != null) {
-                    stockMovementService.save(stockMovement);
-                }
-                Product updatedProduct = productService.saveProduct(productToUpdate);
-                // Check if low stock notification is needed after update
-                LowStockNotification lowStockNotification = lowStockNotificationService.notificationFromProduct(updatedProduct);
-                if (lowStockNotification != null) {
-                    lowStockNotificationService.save(lowStockNotification);
+            Optional<ProductUpdateService.UpdatedProduct> updated = productUpdateService.updateProduct(productId, product, username);
+            if (updated.isEmpty()) {
+                return ResponseEntity.notFound().build();
+            }
+            recordInventoryChange(updated.get().before(), updated.get().after());
+            if (updated.get().lowStockNotified()) {
+                messagingTemplate.convertAndSend("/topic/low-stock", "new");
+            }
+            return ResponseEntity.ok(ProductMapper.INSTANCE.toDto(updated.get().after()));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        } catch (OptimisticLockingFailureException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        }
+    }
 
-                    messagingTemplate.convertAndSend("/topic/low-stock", "new");
-                }
-                return ResponseEntity.ok(ProductMapper.INSTANCE.toDto(updatedProduct));
+    // Streamed JSON array of products, rows without an id are created and rows with an id update that product
+    @PostMapping("/bulk")
+    @PreAuthorize("hasRole('role_admin')")
+    public ResponseEntity<BulkResultDTO> upsertProducts(InputStream body, Authentication authentication) throws IOException {
+        try {
+            BulkResultDTO result = productBulkService.upsertProducts(body, authentication.getName(), this::recordInventoryChange);
+            if (result.lowStockNotifications() > 0) {
+                messagingTemplate.convertAndSend("/topic/low-stock", "new");
             }
-            return ResponseEntity.notFound().build();
+            if (result.error() == null) {
+                return ResponseEntity.ok(result);
+            }
+            // Part of the rows were applied, the summary says which ones
+            boolean chunkFailed = result.rows().stream().anyMatch(row -> row.status() == BulkRowStatus.FAILED);
+            return ResponseEntity.status(chunkFailed ? HttpStatus.INTERNAL_SERVER_ERROR : HttpStatus.BAD_REQUEST).body(result);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    // Batch of scanner stock deltas, entries are validated one by one and reported in the summary
+    @PostMapping("/stock-adjustments")
+    @PreAuthorize("hasAnyRole('role_admin', 'role_employee')")
+    public ResponseEntity<BulkResultDTO> adjustStock(@RequestBody List<StockAdjustmentDTO> adjustments, Authentication authentication) {
+        try {
+            BulkResultDTO result = productBulkService.adjustStock(adjustments, authentication.getName(), this::recordInventoryChange);
+            if (result.lowStockNotifications() > 0) {
+                messagingTemplate.convertAndSend("/topic/low-stock", "new");
+            }
+            return ResponseEntity.ok(result);
         } catch (IllegalArgumentException e) {
             return ResponseEntity.badRequest().build();
         }
     }
 
+    // Single stock delta for hot products, queued and applied by the next coalesced flush when coalescing is enabled.
+    // 202 means the delta is in the local journal but not in the database yet.
+    @PostMapping("/stock-deltas")
+    @PreAuthorize("hasAnyRole('role_admin', 'role_employee')")
+    public CompletableFuture<ResponseEntity<BulkRowResult>> addStockDelta(@Valid @RequestBody StockAdjustmentDTO adjustment,
+            Authentication authentication) {
+        String username = authentication.getName();
+        if (!stockCoalescingService.isEnabled()) {
+            ResponseEntity<BulkResultDTO> result = adjustStock(List.of(adjustment), authentication);
+            if (result.getBody() == null) {
+                return CompletableFuture.completedFuture(ResponseEntity.badRequest().build());
+            }
+            return CompletableFuture.completedFuture(stockDeltaResponse(result.getBody().rows().getFirst()));
+        }
+        try {
+            return stockCoalescingService.submit(adjustment.productId(), adjustment.delta(), adjustment.reason(), username)
+                    .thenApply(status -> stockDeltaResponse(new BulkRowResult(0, adjustment.productId(), status, null)))
+                    .exceptionally(e -> ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build());
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().build());
+        }
+    }
+
     @DeleteMapping("/{id}")
     @PreAuthorize("hasRole('role_admin')")
     public ResponseEntity<Void> deleteProduct(@PathVariable("id") String id, Authentication authentication) {
@@ -115,7 +259,8 @@ public class ProductController {
                 if (stockMovement != null) {
                     stockMovementService.save(stockMovement);
                 }
-                productService.deleteProduct(productId);
+                productService.deleteProduct(product.get());
+                recordInventoryChange(product.get(), null);
                 return ResponseEntity.noContent().build();
             }
             return ResponseEntity.notFound().build();
@@ -123,4 +268,41 @@ public class ProductController {
             return ResponseEntity.badRequest().build();
         }
     }
+
+    @PostConstruct
+    void registerStockFlushListener() {
+        stockCoalescingService.setListener((writes, lowStockNotifications) -> {
+            writes.forEach(write -> recordInventoryChange(write.before(), write.after()));
+            if (lowStockNotifications > 0) {
+                messagingTemplate.convertAndSend("/topic/low-stock", "new");
+            }
+        });
+    }
+
+    private static ResponseEntity<BulkRowResult> stockDeltaResponse(BulkRowResult row) {
+        HttpStatus status = switch (row.status()) {
+            case ACCEPTED -> HttpStatus.ACCEPTED;
+            case REJECTED, NOT_FOUND -> HttpStatus.CONFLICT;
+            case INVALID -> HttpStatus.BAD_REQUEST;
+            case FAILED -> HttpStatus.INTERNAL_SERVER_ERROR;
+            case CREATED, UPDATED -> HttpStatus.OK;
+        };
+        return ResponseEntity.status(status).body(row);
+    }
+
+    // Keep the dashboard read models in sync with a product write, before is null on create and after on delete
+    private void recordInventoryChange(Product before, Product after) {
+        if (before == null) {
+            inventoryCounters.productCreated(after);
+            productSearchIndex.productSaved(after);
+        } else if (after == null) {
+            inventoryCounters.productDeleted(before);
+            productSearchIndex.productDeleted(before);
+        } else {
+            inventoryCounters.productUpdated(before, after);
+            productSearchIndex.productSaved(after);
+        }
+        dashboardStatsCache.recordWrite();
+        dashboardStatsPublisher.markDirty();
+    }
 }
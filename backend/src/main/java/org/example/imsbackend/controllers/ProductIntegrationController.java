@@ -3,14 +3,32 @@ package org.example.imsbackend.controllers;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 
+import org.example.imsbackend.dto.BulkResultDTO;
+import org.example.imsbackend.dto.BulkRowResult;
+import org.example.imsbackend.dto.CursorPage;
+import org.example.imsbackend.dto.FacetedProductSearchDTO;
 import org.example.imsbackend.dto.ProductDTO;
 import org.example.imsbackend.dto.ProductFilter;
+import org.example.imsbackend.dto.ProductNameDTO;
+import org.example.imsbackend.dto.StockAdjustmentDTO;
+import org.example.imsbackend.enums.ExportFormat;
+import org.example.imsbackend.services.ExportService;
 import org.springframework.data.domain.Page;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.Authentication;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.zip.GZIPOutputStream;
 
 @RestController
 @Validated
@@ -19,15 +37,61 @@ import org.springframework.web.bind.annotation.*;
 @PreAuthorize("hasRole('role_admin')")
 public class ProductIntegrationController {
     private final ProductController productController;
+    private final ExportService exportService;
 
     @GetMapping("/search")
-    public ResponseEntity<Page<ProductDTO>> getAllProductsWithFilter(@ModelAttribute ProductFilter filter) {
-        return productController.getAllProductsWithFilter(filter);
+    public ResponseEntity<Page<ProductDTO>> getAllProductsWithFilter(@ModelAttribute ProductFilter filter, WebRequest request) {
+        return productController.getAllProductsWithFilter(filter, request);
+    }
+
+    @GetMapping("/search/faceted")
+    public ResponseEntity<FacetedProductSearchDTO> getAllProductsWithFacets(@ModelAttribute ProductFilter filter) {
+        return productController.getAllProductsWithFacets(filter);
+    }
+
+    @GetMapping("/search/scroll")
+    public ResponseEntity<CursorPage<ProductDTO>> scrollProductsWithFilter(@ModelAttribute ProductFilter filter) {
+        return productController.scrollProductsWithFilter(filter);
+    }
+
+    @GetMapping("/search/relevance")
+    public ResponseEntity<List<ProductDTO>> searchProductsByRelevance(@ModelAttribute ProductFilter filter) {
+        return productController.searchProductsByRelevance(filter);
+    }
+
+    @GetMapping("/suggest")
+    public ResponseEntity<List<ProductNameDTO>> suggestProductNames(@RequestParam("q") String query,
+            @RequestParam(value = "limit", defaultValue = "8") int limit) {
+        return productController.suggestProductNames(query, limit);
     }
 
     @GetMapping("/{id}/details")
-    public ResponseEntity<ProductDTO> getProductById(@PathVariable("id") String id) {
-        return productController.getProductById(id);
+    public ResponseEntity<ProductDTO> getProductById(@PathVariable("id") String id, WebRequest request) {
+        return productController.getProductById(id, request);
+    }
+
+    // Whole catalogue as NDJSON or CSV, gzip compressed when the client accepts it
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportProducts(@RequestParam(value = "format", defaultValue = "ndjson") String format,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        ExportFormat exportFormat;
+        try {
+            exportFormat = ExportFormat.valueOf(format.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        boolean gzip = ExportService.acceptsGzip(acceptEncoding);
+        StreamingResponseBody body = out -> exportService.exportProducts(exportFormat,
+                gzip ? new GZIPOutputStream(out, 64 * 1024, true) : out);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(exportFormat.getMediaType())
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        ContentDisposition.attachment().filename("products." + exportFormat.getExtension()).build().toString())
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) {
+            response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        return response.body(body);
     }
 
     @PostMapping
@@ -35,6 +99,22 @@ public class ProductIntegrationController {
         return productController.createProduct(product, authentication);
     }
 
+    @PostMapping("/bulk")
+    public ResponseEntity<BulkResultDTO> upsertProducts(InputStream body, Authentication authentication) throws IOException {
+        return productController.upsertProducts(body, authentication);
+    }
+
+    @PostMapping("/stock-adjustments")
+    public ResponseEntity<BulkResultDTO> adjustStock(@RequestBody List<StockAdjustmentDTO> adjustments, Authentication authentication) {
+        return productController.adjustStock(adjustments, authentication);
+    }
+
+    @PostMapping("/stock-deltas")
+    public CompletableFuture<ResponseEntity<BulkRowResult>> addStockDelta(@Valid @RequestBody StockAdjustmentDTO adjustment,
+            Authentication authentication) {
+        return productController.addStockDelta(adjustment, authentication);
+    }
+
     @PutMapping("/{id}")
     public ResponseEntity<ProductDTO> updateProduct(@PathVariable("id") String id,
             @Valid @RequestBody ProductDTO product, Authentication authentication) {
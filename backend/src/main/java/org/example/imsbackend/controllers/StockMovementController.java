@@ -1,19 +1,29 @@
 package org.example.imsbackend.controllers;
 
 import lombok.RequiredArgsConstructor;
+import org.example.imsbackend.dto.CursorPage;
+import org.example.imsbackend.dto.StockMovementCursorFilter;
 import org.example.imsbackend.dto.StockMovementDTO;
+import org.example.imsbackend.dto.StockMovementExportFilter;
 import org.example.imsbackend.dto.StockMovementFilter;
 import org.example.imsbackend.mappers.StockMovementMapper;
 import org.example.imsbackend.models.StockMovement;
+import org.example.imsbackend.services.ExportService;
 import org.example.imsbackend.services.StockMovementService;
 import org.springframework.data.domain.Page;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.ModelAttribute;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.util.zip.GZIPOutputStream;
 
 @RestController
 @Validated
@@ -21,11 +31,47 @@ import org.springframework.web.bind.annotation.RestController;
 @RequiredArgsConstructor
 public class StockMovementController {
     private final StockMovementService stockMovementService;
+    private final ExportService exportService;
 
     @GetMapping
     @PreAuthorize("hasAnyRole('role_admin', 'role_employee')")
     public ResponseEntity<Page<StockMovementDTO>> getAllStockMovements(@ModelAttribute StockMovementFilter filter) {
-        Page<StockMovement> stockMovements = stockMovementService.getAllStockMovements(filter);
-        return ResponseEntity.ok(stockMovements.map(StockMovementMapper.INSTANCE::toDto));
+        return ResponseEntity.ok(stockMovementService.getAllStockMovements(filter));
+    }
+
+    @GetMapping("/scroll")
+    @PreAuthorize("hasAnyRole('role_admin', 'role_employee')")
+    public ResponseEntity<CursorPage<StockMovementDTO>> scrollStockMovements(@ModelAttribute StockMovementCursorFilter filter) {
+        try {
+            CursorPage<StockMovement> stockMovements = stockMovementService.scrollStockMovements(filter);
+            return ResponseEntity.ok(stockMovements.map(StockMovementMapper.INSTANCE::toDto));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    // Movements of a date range as NDJSON or CSV, gzip compressed when the client accepts it
+    @GetMapping("/export")
+    @PreAuthorize("hasAnyRole('role_admin', 'role_employee')")
+    public ResponseEntity<StreamingResponseBody> exportStockMovements(@ModelAttribute StockMovementExportFilter filter,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        ExportService.StockMovementExport export;
+        try {
+            export = exportService.stockMovementExport(filter);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        boolean gzip = ExportService.acceptsGzip(acceptEncoding);
+        StreamingResponseBody body = out -> exportService.exportStockMovements(export,
+                gzip ? new GZIPOutputStream(out, 64 * 1024, true) : out);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(export.format().getMediaType())
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        ContentDisposition.attachment().filename("stock-movements." + export.format().getExtension()).build().toString())
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) {
+            response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        return response.body(body);
     }
 }
@@ -0,0 +1,8 @@
+package org.example.imsbackend.dto;
+
+import java.util.List;
+
+// error is set when the request could not be read to the end, rows before it were applied, or when chunks failed
+public record BulkResultDTO(int created, int updated, int failed, int lowStockNotifications, String error,
+                            List<BulkRowResult> rows) {
+}
@@ -0,0 +1,9 @@
+package org.example.imsbackend.dto;
+
+import org.example.imsbackend.enums.BulkRowStatus;
+
+import java.util.UUID;
+
+// Outcome of one row of a bulk request, index is the position of the row in the request array
+public record BulkRowResult(int index, UUID id, BulkRowStatus status, String error) {
+}
@@ -0,0 +1,6 @@
+package org.example.imsbackend.dto;
+
+import org.example.imsbackend.enums.Category;
+
+public record CategoryInventory(Category category, long products, long stock, double value) {
+}
@@ -0,0 +1,11 @@
+package org.example.imsbackend.dto;
+
+import java.util.List;
+import java.util.function.Function;
+
+// Keyset page, nextCursor is null on the last page. total is only set when it was explicitly requested
+public record CursorPage<T>(List<T> content, int size, boolean hasNext, String nextCursor, Long total) {
+    public <R> CursorPage<R> map(Function<? super T, ? extends R> mapper) {
+        return new CursorPage<>(content.stream().<R>map(mapper).toList(), size, hasNext, nextCursor, total);
+    }
+}
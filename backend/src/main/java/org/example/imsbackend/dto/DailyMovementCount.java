@@ -0,0 +1,6 @@
+package org.example.imsbackend.dto;
+
+import java.time.LocalDateTime;
+
+public record DailyMovementCount(LocalDateTime day, long in, long out) {
+}
@@ -0,0 +1,6 @@
+package org.example.imsbackend.dto;
+
+import org.springframework.data.domain.Page;
+
+public record FacetedProductSearchDTO(Page<ProductDTO> results, ProductFacets facets) {
+}
@@ -0,0 +1,6 @@
+package org.example.imsbackend.dto;
+
+import java.time.LocalDateTime;
+
+public record HourlyCount(LocalDateTime hour, String key, String label, long count) {
+}
@@ -0,0 +1,7 @@
+package org.example.imsbackend.dto;
+
+public interface InventoryTotals {
+    Long getTotalProducts();
+    Long getTotalStock();
+    Double getTotalValue();
+}
@@ -0,0 +1,8 @@
+package org.example.imsbackend.dto;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+// Entries are ordered by movement count, highest first
+public record LeaderboardDTO(String dimension, LocalDateTime from, LocalDateTime to, List<StatsData.ObjectCount> entries) {
+}
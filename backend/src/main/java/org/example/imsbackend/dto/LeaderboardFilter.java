@@ -0,0 +1,25 @@
+package org.example.imsbackend.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+public class LeaderboardFilter {
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+    private LocalDateTime from;
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+    private LocalDateTime to;
+    private String dimension = "USERNAME";
+    private int limit = 10;
+
+    public LeaderboardFilter(LocalDateTime from, LocalDateTime to, String dimension, int limit) {
+        this.from = from;
+        this.to = to;
+        this.dimension = dimension != null ? dimension : "USERNAME";
+        this.limit = limit;
+    }
+}
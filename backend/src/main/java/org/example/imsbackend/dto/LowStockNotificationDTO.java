@@ -3,6 +3,10 @@ package org.example.imsbackend.dto;
 import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotNull;
 
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.UUID;
+
 
 public record LowStockNotificationDTO(
         @NotNull(message = "Date cannot be null") String date,
@@ -12,4 +16,9 @@ public record LowStockNotificationDTO(
         @NotNull(message = "Current stock cannot be null") @Min(value = 0, message = "Current stock must be greater than or equal to zero") Integer currentStock,
 
         @NotNull(message = "Minimum stock cannot be null") @Min(value = 0, message = "Minimum stock must be greater than or equal to zero") Integer minimumStock) {
+
+    // JPQL constructor projection, formats the date like the mapper does
+    public LowStockNotificationDTO(LocalDateTime date, UUID productId, String productName, Integer currentStock, Integer minimumStock) {
+        this(DateTimeFormatter.ISO_LOCAL_DATE_TIME.format(date), new ProductNameDTO(productId, productName), currentStock, minimumStock);
+    }
 }
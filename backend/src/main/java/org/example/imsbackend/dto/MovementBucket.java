@@ -0,0 +1,6 @@
+package org.example.imsbackend.dto;
+
+import java.time.LocalDateTime;
+
+public record MovementBucket(LocalDateTime date, long in, long out) {
+}
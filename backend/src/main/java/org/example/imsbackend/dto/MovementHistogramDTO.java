@@ -0,0 +1,8 @@
+package org.example.imsbackend.dto;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+// Only buckets with at least one movement are returned
+public record MovementHistogramDTO(String granularity, LocalDateTime from, LocalDateTime to, List<MovementBucket> buckets) {
+}
@@ -0,0 +1,23 @@
+package org.example.imsbackend.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+public class MovementHistogramFilter {
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+    private LocalDateTime from;
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+    private LocalDateTime to;
+    private String granularity = "HOUR";
+
+    public MovementHistogramFilter(LocalDateTime from, LocalDateTime to, String granularity) {
+        this.from = from;
+        this.to = to;
+        this.granularity = granularity != null ? granularity : "HOUR";
+    }
+}
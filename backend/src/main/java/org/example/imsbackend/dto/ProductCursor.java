@@ -0,0 +1,28 @@
+package org.example.imsbackend.dto;
+
+import org.example.imsbackend.enums.ProductScrollSort;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.UUID;
+
+// Position after the last (sort key, id) returned, encoded as an opaque URL safe token
+public record ProductCursor(ProductScrollSort sort, String key, UUID id) {
+    private static final String SEPARATOR = "|";
+
+    public String encode() {
+        // The key goes last because product names may contain the separator
+        String raw = sort + SEPARATOR + id + SEPARATOR + key;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Throws IllegalArgumentException for tokens that were not produced by encode()
+    public static ProductCursor decode(String cursor) {
+        try {
+            String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split("\\|", 3);
+            return new ProductCursor(ProductScrollSort.valueOf(parts[0]), parts[2], UUID.fromString(parts[1]));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid cursor", e);
+        }
+    }
+}
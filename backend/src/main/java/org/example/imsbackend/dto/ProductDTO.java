@@ -3,6 +3,7 @@ package org.example.imsbackend.dto;
 import java.util.UUID;
 
 import org.example.imsbackend.annotations.ValidCategory;
+import org.example.imsbackend.enums.Category;
 
 import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotBlank;
@@ -24,5 +25,14 @@ public record ProductDTO(
 
         @NotNull(message = "Stock cannot be null") @Min(value = 0, message = "Stock must be greater than or equal to zero") Integer stock,
 
-        @NotNull @ValidCategory String category) {
+        @NotNull @ValidCategory String category,
+
+        // Version the client read, an update is refused when the product changed since. Ignored on create
+        Long version) {
+
+    // JPQL constructor projection, reads the columns without loading the entity
+    public ProductDTO(UUID id, String name, String description, Double price, Integer initialStock, Integer minimumStock,
+                      Integer stock, Category category, Long version) {
+        this(id, name, description, price, initialStock, minimumStock, stock, category.name(), version);
+    }
 }
@@ -0,0 +1,15 @@
+package org.example.imsbackend.dto;
+
+import org.example.imsbackend.enums.Category;
+
+import java.util.List;
+
+// Category counts ignore the category filter and price buckets ignore the price filter, so each facet shows what
+// selecting one of its values would yield
+public record ProductFacets(List<CategoryCount> categories, List<PriceBucket> prices) {
+    public record CategoryCount(Category category, long count) {
+    }
+
+    public record PriceBucket(double from, double to, long count) {
+    }
+}
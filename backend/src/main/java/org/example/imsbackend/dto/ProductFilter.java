@@ -15,6 +15,14 @@ public class ProductFilter {
     private Double maxPrice;
     private Integer page = 0;
     private Integer size = 10;
+    // Search and scroll mode, scroll only supports NAME and PRICE
+    private String sort = "NAME";
+    private String direction = "ASC";
+    // Scroll mode only
+    private String cursor;
+    private boolean withTotal;
+    // Faceted search only
+    private Integer priceBuckets = 10;
 
     public ProductFilter(String name, List<Category> categories, Double minPrice, Double maxPrice,
                             Integer page, Integer size) {
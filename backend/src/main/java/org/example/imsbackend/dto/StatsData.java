@@ -1,63 +1,44 @@
 package org.example.imsbackend.dto;
 
-import lombok.AllArgsConstructor;
-import lombok.Getter;
-import lombok.NoArgsConstructor;
-import lombok.Setter;
-
 import java.time.LocalDateTime;
 import java.util.List;
 
-@Getter
-@Setter
-@AllArgsConstructor
-@NoArgsConstructor
-public class StatsData {
-    private Summary summary;
-    private List<ObjectCount> categoriesDistribution;
-    private List<ObjectCount> categoriesMovement;
-    private MovementsLast24Hours movementsLast24Hours;
-    private MovementsLast7Days movementsLast7Days;
-
-    @AllArgsConstructor
-    @Setter
-    @Getter
-    public static class Summary {
-        public long totalProducts;
-        public long totalStock;
-        public double totalValue;
+// Immutable so one snapshot can be shared by every reader, a null section timed out or failed
+public record StatsData(Summary summary,
+                        List<ObjectCount> categoriesDistribution,
+                        List<ObjectCount> categoriesMovement,
+                        MovementsLast24Hours movementsLast24Hours,
+                        MovementsLast7Days movementsLast7Days) {
+    public static final StatsData EMPTY = new StatsData(null, null, null, null, null);
+
+    public StatsData {
+        categoriesDistribution = copyOf(categoriesDistribution);
+        categoriesMovement = copyOf(categoriesMovement);
+    }
+
+    public record Summary(long totalProducts, long totalStock, double totalValue) {
+    }
+
+    public record ObjectCount(String name, long value) {
     }
 
-    @AllArgsConstructor
-    @Setter
-    @Getter
-    public static class ObjectCount {
-        public String name;
-        public long value;
+    public record MovementsLast24Hours(long in, long out, List<ObjectCount> topUsers) {
+        public MovementsLast24Hours {
+            topUsers = copyOf(topUsers);
+        }
     }
 
-    @AllArgsConstructor
-    @Setter
-    @Getter
-    public static class MovementsLast24Hours {
-        public long in;
-        public long out;
-        public List<ObjectCount> topUsers;
+    public record MovementsLast7Days(List<MovementCount> in, List<MovementCount> out) {
+        public MovementsLast7Days {
+            in = copyOf(in);
+            out = copyOf(out);
+        }
     }
 
-    @AllArgsConstructor
-    @Setter
-    @Getter
-    public static class MovementsLast7Days {
-        public List<MovementCount> in;
-        public List<MovementCount> out;
+    public record MovementCount(LocalDateTime date, long count) {
     }
 
-    @AllArgsConstructor
-    @Setter
-    @Getter
-    public static class MovementCount {
-        public LocalDateTime date;
-        public long count;
+    private static <T> List<T> copyOf(List<T> list) {
+        return list != null ? List.copyOf(list) : null;
     }
 }
@@ -0,0 +1,15 @@
+package org.example.imsbackend.dto;
+
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+
+import java.util.UUID;
+
+// Stock change sent by a scanner, a positive delta adds stock and a negative one removes it
+public record StockAdjustmentDTO(
+        @NotNull(message = "Product ID cannot be null") UUID productId,
+
+        @NotNull(message = "Delta cannot be null") Integer delta,
+
+        @Size(max = 255, message = "Reason must be at most 255 characters long") String reason) {
+}
@@ -0,0 +1,16 @@
+package org.example.imsbackend.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+public class StockMovementCursorFilter {
+    private String cursor;
+    private Integer size = 10;
+
+    public StockMovementCursorFilter(String cursor, Integer size) {
+        this.cursor = cursor;
+        this.size = size != null ? size : 10;
+    }
+}
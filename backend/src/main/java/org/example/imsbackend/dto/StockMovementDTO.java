@@ -5,7 +5,11 @@ import jakarta.validation.constraints.NotNull;
 import jakarta.validation.constraints.Size;
 import org.example.imsbackend.annotations.ValidStockMovementAction;
 import org.example.imsbackend.annotations.ValidStockMovementType;
+import org.example.imsbackend.enums.StockMovementAction;
+import org.example.imsbackend.enums.StockMovementType;
 
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
 import java.util.UUID;
 
 public record StockMovementDTO(
@@ -21,6 +25,14 @@ public record StockMovementDTO(
 
         @NotNull(message = "Stock quantity cannot be null") @Min(value = 0, message = "Stock movement quatity must be greater than or equal to zero")Integer quantity,
 
-        @NotNull(message = "Action cannot be null") @ValidStockMovementAction String action){
+        @NotNull(message = "Action cannot be null") @ValidStockMovementAction String action,
 
+        @Size(max = 255, message = "Reason must be at most 255 characters long") String reason){
+
+    // JPQL constructor projection, formats the date like the mapper does
+    public StockMovementDTO(UUID id, LocalDateTime date, StockMovementType type, UUID productId, String productName,
+                            String username, Integer quantity, StockMovementAction action, String reason) {
+        this(id, DateTimeFormatter.ISO_LOCAL_DATE_TIME.format(date), type.name(), new ProductNameDTO(productId, productName),
+                username, quantity, action.name(), reason);
+    }
 }
@@ -0,0 +1,30 @@
+package org.example.imsbackend.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+public class StockMovementExportFilter {
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+    private LocalDateTime from;
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+    private LocalDateTime to;
+    // Optional filters
+    private String type;
+    private String action;
+    private String username;
+    private String format = "NDJSON";
+
+    public StockMovementExportFilter(LocalDateTime from, LocalDateTime to, String type, String action, String username, String format) {
+        this.from = from;
+        this.to = to;
+        this.type = type;
+        this.action = action;
+        this.username = username;
+        this.format = format != null ? format : "NDJSON";
+    }
+}
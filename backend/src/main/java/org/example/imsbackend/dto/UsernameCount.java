@@ -1,6 +0,0 @@
-package org.example.imsbackend.dto;
-
-public interface UsernameCount {
-    String getUsername();
-    Long getCount();
-}
@@ -0,0 +1,15 @@
+package org.example.imsbackend.enums;
+
+public enum BulkRowStatus {
+    CREATED,
+    UPDATED,
+    INVALID,
+    NOT_FOUND,
+    // Stock adjustment of a missing product or one that would leave the stock below zero, or a bulk row whose version
+    // is no longer the product's
+    REJECTED,
+    // Stock delta stored in the local journal, the database is updated by the next coalesced flush
+    ACCEPTED,
+    // Row of a bulk chunk whose transaction failed, nothing of the chunk was stored
+    FAILED
+}
@@ -0,0 +1,24 @@
+package org.example.imsbackend.enums;
+
+import lombok.Getter;
+
+import java.time.Duration;
+
+@Getter
+public enum HistogramGranularity {
+    MINUTE("minute", Duration.ofMinutes(1)),
+    HOUR("hour", Duration.ofHours(1)),
+    DAY("day", Duration.ofDays(1)),
+    WEEK("week", Duration.ofDays(7)),
+    MONTH("month", Duration.ofDays(28));
+
+    // Unit name understood by PostgreSQL date_trunc
+    private final String truncUnit;
+    // Shortest bucket length, used to bound the number of buckets of a window
+    private final Duration minimumLength;
+
+    HistogramGranularity(String truncUnit, Duration minimumLength) {
+        this.truncUnit = truncUnit;
+        this.minimumLength = minimumLength;
+    }
+}
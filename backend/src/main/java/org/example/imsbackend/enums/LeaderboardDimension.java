@@ -0,0 +1,7 @@
+package org.example.imsbackend.enums;
+
+public enum LeaderboardDimension {
+    USERNAME,
+    PRODUCT,
+    CATEGORY
+}
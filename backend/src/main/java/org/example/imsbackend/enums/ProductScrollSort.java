@@ -0,0 +1,16 @@
+package org.example.imsbackend.enums;
+
+import lombok.Getter;
+
+@Getter
+public enum ProductScrollSort {
+    NAME("name"),
+    PRICE("price");
+
+    // Product attribute the keyset is built on, the id breaks ties
+    private final String attribute;
+
+    ProductScrollSort(String attribute) {
+        this.attribute = attribute;
+    }
+}
@@ -0,0 +1,65 @@
+package org.example.imsbackend.enums;
+
+import lombok.Getter;
+import org.example.imsbackend.models.Product;
+
+import java.util.Comparator;
+import java.util.UUID;
+import java.util.function.Function;
+
+public enum ProductSort {
+    NAME("name", by(Product::getName, ProductSort::compareCodePoints)),
+    PRICE("price", by(Product::getPrice)),
+    STOCK("stock", by(Product::getStock)),
+    CATEGORY("category", by(product -> product.getCategory() != null ? product.getCategory().name() : null)),
+    // Computed from the entity, stockRatio is only filled when the product is read from the database
+    STOCK_RATIO("stockRatio", by(product -> product.getStock() != null && product.getMinimumStock() != null && product.getMinimumStock() != 0
+            ? (double) product.getStock() / product.getMinimumStock()
+            : null));
+
+    // Product attribute backed by a (column, id) index, the id breaks ties
+    @Getter
+    private final String attribute;
+    private final Comparator<Product> comparator;
+
+    ProductSort(String attribute, Comparator<Product> comparator) {
+        this.attribute = attribute;
+        this.comparator = comparator;
+    }
+
+    // Same order as the database: names in code point order (the searches order them with the ucs_basic collation),
+    // nulls last ascending, ties broken by id in uuid byte order
+    public Comparator<Product> comparator(boolean descending) {
+        return descending ? comparator.reversed() : comparator;
+    }
+
+    private static <T extends Comparable<T>> Comparator<Product> by(Function<Product, T> key) {
+        return by(key, Comparator.naturalOrder());
+    }
+
+    private static <T> Comparator<Product> by(Function<Product, T> key, Comparator<T> order) {
+        return Comparator.comparing(key, Comparator.nullsLast(order))
+                .thenComparing(Product::getId, ProductSort::compareIds);
+    }
+
+    // String.compareTo compares UTF-16 units, which puts characters beyond U+FFFF before U+E000 to U+FFFF
+    private static int compareCodePoints(String first, String second) {
+        int i = 0;
+        while (i < first.length() && i < second.length()) {
+            int a = first.codePointAt(i);
+            int b = second.codePointAt(i);
+            if (a != b) {
+                return Integer.compare(a, b);
+            }
+            i += Character.charCount(a);
+        }
+        return Integer.compare(first.length(), second.length());
+    }
+
+    // Unsigned comparison of the two halves, the byte order of the uuid without formatting it as text
+    private static int compareIds(UUID first, UUID second) {
+        int byMostSignificant = Long.compareUnsigned(first.getMostSignificantBits(), second.getMostSignificantBits());
+        return byMostSignificant != 0 ? byMostSignificant
+                : Long.compareUnsigned(first.getLeastSignificantBits(), second.getLeastSignificantBits());
+    }
+}
@@ -0,0 +1,9 @@
+package org.example.imsbackend.enums;
+
+// When a coalesced stock delta is acknowledged to the client
+public enum StockAckMode {
+    // Once the flush that applies it is committed
+    AFTER_FLUSH,
+    // Once it is forced to the local journal, a restart replays the deltas that were not flushed
+    AFTER_APPEND
+}
@@ -3,6 +3,8 @@ package org.example.imsbackend.mappers;
 import org.example.imsbackend.dto.ProductDTO;
 import org.example.imsbackend.models.Product;
 import org.mapstruct.Mapper;
+import org.mapstruct.Mapping;
+import org.mapstruct.MappingTarget;
 import org.mapstruct.factory.Mappers;
 
 @Mapper
@@ -10,6 +12,17 @@ public interface ProductMapper {
     ProductMapper INSTANCE = Mappers.getMapper(ProductMapper.class);
 
     ProductDTO toDto(Product product);
+    // Versioning is managed by the entity, stockRatio is computed by the database
+    @Mapping(target = "version", ignore = true)
+    @Mapping(target = "updatedAt", ignore = true)
+    @Mapping(target = "stockRatio", ignore = true)
     Product toEntity(ProductDTO productDTO);
     Iterable<ProductDTO> toDto(Iterable<Product> products);
+
+    // Copies the editable fields onto a managed product, identity and versioning stay with the entity
+    @Mapping(target = "id", ignore = true)
+    @Mapping(target = "version", ignore = true)
+    @Mapping(target = "updatedAt", ignore = true)
+    @Mapping(target = "stockRatio", ignore = true)
+    void updateEntity(ProductDTO productDTO, @MappingTarget Product product);
 }
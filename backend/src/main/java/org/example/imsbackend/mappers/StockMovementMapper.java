@@ -3,12 +3,15 @@ package org.example.imsbackend.mappers;
 import org.example.imsbackend.dto.StockMovementDTO;
 import org.example.imsbackend.models.StockMovement;
 import org.mapstruct.Mapper;
+import org.mapstruct.Mapping;
 import org.mapstruct.factory.Mappers;
 
 @Mapper
 public interface StockMovementMapper {
     StockMovementMapper INSTANCE = Mappers.getMapper(StockMovementMapper.class);
 
+    // The category is read from the product when the movement is rolled up
+    @Mapping(target = "category", ignore = true)
     StockMovement toEntity(StockMovementDTO stockMovementDTO);
     StockMovementDTO toDto(StockMovement stockMovement);
     Iterable<StockMovementDTO> toDto(Iterable<StockMovement> stockMovements);
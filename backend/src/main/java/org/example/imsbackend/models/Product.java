@@ -10,6 +10,7 @@ import lombok.NoArgsConstructor;
 import org.example.imsbackend.annotations.ValidCategory;
 import org.example.imsbackend.enums.Category;
 
+import java.time.Instant;
 import java.util.UUID;
 
 @Entity
@@ -56,4 +57,22 @@ public class Product {
     @ValidCategory
     @Column(nullable = false)
     private Category category;
+
+    // stock / minimumStock computed by the database, null when there is no minimum
+    @Column(insertable = false, updatable = false)
+    private Double stockRatio;
+
+    // Incremented by Hibernate on every update, exposed as the ETag of the product
+    @Version
+    @Column(nullable = false)
+    private Long version;
+
+    @Column(nullable = false)
+    private Instant updatedAt;
+
+    @PrePersist
+    @PreUpdate
+    void touch() {
+        updatedAt = Instant.now();
+    }
 }
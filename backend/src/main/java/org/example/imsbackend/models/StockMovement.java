@@ -9,6 +9,7 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.example.imsbackend.annotations.ValidStockMovementAction;
 import org.example.imsbackend.annotations.ValidStockMovementType;
+import org.example.imsbackend.enums.Category;
 import org.example.imsbackend.enums.StockMovementAction;
 import org.example.imsbackend.enums.StockMovementType;
 
@@ -54,5 +55,11 @@ public class StockMovement {
     @Column(nullable = false)
     private StockMovementAction action;
 
+    // Category of the product when the movement was recorded, rolled up with it
+    @Enumerated(EnumType.STRING)
+    private Category category;
 
+    // Free text sent with stock adjustments, null for product writes
+    @Size(max = 255, message = "Reason must be at most 255 characters long")
+    private String reason;
 }
@@ -0,0 +1,47 @@
+package org.example.imsbackend.repositories;
+
+import lombok.RequiredArgsConstructor;
+import org.example.imsbackend.dto.CategoryInventory;
+import org.example.imsbackend.enums.Category;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+// Grouped aggregate queries over the current catalogue backing the dashboard
+@Repository
+@RequiredArgsConstructor
+public class DashboardStatsRepository {
+    private static final String INVENTORY_BY_CATEGORY = """
+            SELECT category, COUNT(*) AS products, COALESCE(SUM(stock), 0) AS stock, COALESCE(SUM(price * stock), 0) AS value
+            FROM products
+            GROUP BY category
+            """;
+
+    private static final String MOVEMENTS_BY_CATEGORY = """
+            SELECT p.category AS category, COUNT(*) AS movements
+            FROM stock_movements sm
+            JOIN products p ON sm.product_id = p.id
+            GROUP BY p.category
+            """;
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    public List<CategoryInventory> inventoryByCategory() {
+        return jdbcTemplate.query(INVENTORY_BY_CATEGORY, (rs, rowNum) -> new CategoryInventory(
+                Category.valueOf(rs.getString("category")),
+                rs.getLong("products"),
+                rs.getLong("stock"),
+                rs.getDouble("value")));
+    }
+
+    public Map<Category, Long> movementsByCategory() {
+        Map<Category, Long> counts = new EnumMap<>(Category.class);
+        jdbcTemplate.query(MOVEMENTS_BY_CATEGORY, rs -> {
+            counts.put(Category.valueOf(rs.getString("category")), rs.getLong("movements"));
+        });
+        return counts;
+    }
+}
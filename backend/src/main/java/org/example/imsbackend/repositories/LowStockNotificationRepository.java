@@ -1,13 +1,20 @@
 package org.example.imsbackend.repositories;
 
+import org.example.imsbackend.dto.LowStockNotificationDTO;
 import org.example.imsbackend.models.LowStockNotification;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.UUID;
 
 public interface LowStockNotificationRepository extends JpaRepository<LowStockNotification, UUID>, JpaSpecificationExecutor<LowStockNotification> {
-    Page<LowStockNotification> findAllByOrderByDateDesc(Pageable pageable);
+    // Notifications on descending date projected to DTOs, no entity is loaded
+    @Transactional(readOnly = true)
+    @Query(value = "SELECT new org.example.imsbackend.dto.LowStockNotificationDTO(n.date, n.product.productId, n.product.name, n.currentStock, n.minimumStock) FROM LowStockNotification n ORDER BY n.date DESC",
+            countQuery = "SELECT COUNT(n) FROM LowStockNotification n")
+    Page<LowStockNotificationDTO> findAllDtos(Pageable pageable);
 }
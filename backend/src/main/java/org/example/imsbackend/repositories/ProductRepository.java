@@ -1,20 +1,46 @@
 package org.example.imsbackend.repositories;
 
+import jakarta.persistence.QueryHint;
+import org.example.imsbackend.dto.InventoryTotals;
+import org.example.imsbackend.dto.ProductDTO;
 import org.example.imsbackend.enums.Category;
 import org.example.imsbackend.models.Product;
+import org.example.imsbackend.models.ProductName;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.List;
 import java.util.UUID;
+import java.util.stream.Stream;
 
 public interface ProductRepository extends JpaRepository<Product, UUID>, JpaSpecificationExecutor<Product> {
-    @Query("SELECT p FROM Product p WHERE p.stock < p.minimumStock")
-    Page<Product> findProductsBelowMinimumStock(Pageable pageable);
+    // products below their minimum stock projected to DTOs, no entity is loaded
+    @Transactional(readOnly = true)
+    @Query(value = "SELECT new org.example.imsbackend.dto.ProductDTO(p.id, p.name, p.description, p.price, p.initialStock, p.minimumStock, p.stock, p.category, p.version) FROM Product p WHERE p.stock < p.minimumStock",
+            countQuery = "SELECT COUNT(p) FROM Product p WHERE p.stock < p.minimumStock")
+    Page<ProductDTO> findProductsBelowMinimumStock(Pageable pageable);
+
+    // id and name of every product, loads no other column
+    @Transactional(readOnly = true)
+    @Query("SELECT new org.example.imsbackend.models.ProductName(p.id, p.name) FROM Product p")
+    List<ProductName> findAllNames();
+
+    // every product in id order through a server-side cursor, must be consumed inside a transaction
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"))
+    @Query("SELECT new org.example.imsbackend.dto.ProductDTO(p.id, p.name, p.description, p.price, p.initialStock, p.minimumStock, p.stock, p.category, p.version) FROM Product p ORDER BY p.id")
+    Stream<ProductDTO> streamAll();
 
     // count products in a category
     @Query("SELECT COUNT(p) FROM Product p WHERE p.category = ?1")
     long countByCategory(Category category);
+
+    // product count, stock and inventory value summed in the database, no entity is loaded
+    @Query("SELECT COUNT(p) AS totalProducts, COALESCE(SUM(p.stock), 0) AS totalStock, COALESCE(SUM(p.price * p.stock), 0.0) AS totalValue FROM Product p")
+    InventoryTotals inventoryTotals();
 }
@@ -0,0 +1,150 @@
+package org.example.imsbackend.repositories;
+
+import lombok.RequiredArgsConstructor;
+import org.example.imsbackend.dto.ProductFacets;
+import org.example.imsbackend.dto.ProductFilter;
+import org.example.imsbackend.enums.Category;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+// Relevance ranked and faceted product search. With pg_trgm the relevance search matches name and description through
+// the trigram GIN indexes created by V5, including misspelled name terms. Without the extension (H2, or a database
+// where it could not be created) a portable LIKE query ranks name prefix matches first.
+@Repository
+@RequiredArgsConstructor
+public class ProductSearchRepository {
+    private static final String TRIGRAM_SEARCH = """
+            SELECT id, 2 * word_similarity(:term, lower(name)) + word_similarity(:term, lower(description)) AS relevance
+            FROM products
+            WHERE (lower(name) LIKE :pattern OR :term <% lower(name) OR lower(description) LIKE :pattern)
+            """;
+
+    private static final String LIKE_SEARCH = """
+            SELECT id, CASE WHEN lower(name) LIKE :prefix THEN 3 WHEN lower(name) LIKE :pattern THEN 2 ELSE 1 END AS relevance
+            FROM products
+            WHERE (lower(name) LIKE :pattern OR lower(description) LIKE :pattern)
+            """;
+
+    private static final String ORDER_BY_RELEVANCE = "ORDER BY relevance DESC, name, id LIMIT :limit";
+
+    // Both facets in one scan: the (category) grouping set counts rows inside the price range, the (bucket) grouping
+    // set counts rows inside the selected categories over equal width buckets between their lowest and highest price
+    private static final String FACETS = """
+            WITH matched AS (SELECT category, price, %s AS in_categories, %s AS in_price_range
+                             FROM products
+                             WHERE %s),
+                 bounds AS (SELECT MIN(price) AS low, MAX(price) AS high FROM matched WHERE in_categories),
+                 bucketed AS (SELECT m.category, m.in_categories, m.in_price_range, b.low, b.high,
+                                     CASE WHEN b.high > b.low THEN LEAST(width_bucket(m.price, b.low, b.high, :buckets), :buckets) ELSE 1 END AS bucket
+                              FROM matched m
+                                       CROSS JOIN bounds b)
+            SELECT GROUPING(category) AS by_bucket, category, bucket, MIN(low) AS low, MAX(high) AS high,
+                   COUNT(*) FILTER (WHERE in_price_range) AS category_count,
+                   COUNT(*) FILTER (WHERE in_categories) AS bucket_count
+            FROM bucketed
+            GROUP BY GROUPING SETS ((category), (bucket))
+            """;
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    private volatile Boolean trigramAvailable;
+
+    // Ids of the best matches, most relevant first
+    public List<UUID> searchIds(ProductFilter filter, int limit) {
+        String term = filter.getName().toLowerCase();
+        String escaped = escapeLike(term);
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("term", term)
+                .addValue("pattern", "%" + escaped + "%")
+                .addValue("prefix", escaped + "%")
+                .addValue("limit", limit);
+        StringBuilder sql = new StringBuilder(isTrigramAvailable() ? TRIGRAM_SEARCH : LIKE_SEARCH);
+        if (filter.getCategories() != null && !filter.getCategories().isEmpty()) {
+            sql.append("AND category IN (:categories)\n");
+            params.addValue("categories", filter.getCategories().stream().map(Enum::name).toList());
+        }
+        if (filter.getMinPrice() != null) {
+            sql.append("AND price >= :minPrice\n");
+            params.addValue("minPrice", filter.getMinPrice());
+        }
+        if (filter.getMaxPrice() != null) {
+            sql.append("AND price <= :maxPrice\n");
+            params.addValue("maxPrice", filter.getMaxPrice());
+        }
+        sql.append(ORDER_BY_RELEVANCE);
+        return jdbcTemplate.query(sql.toString(), params, (rs, rowNum) -> rs.getObject("id", UUID.class));
+    }
+
+    public ProductFacets facets(ProductFilter filter, int buckets) {
+        MapSqlParameterSource params = new MapSqlParameterSource("buckets", buckets);
+        String nameCondition = "TRUE";
+        if (filter.getName() != null && !filter.getName().isEmpty()) {
+            nameCondition = "lower(name) LIKE :pattern";
+            params.addValue("pattern", "%" + escapeLike(filter.getName().toLowerCase()) + "%");
+        }
+        String categoryCondition = "TRUE";
+        if (filter.getCategories() != null && !filter.getCategories().isEmpty()) {
+            categoryCondition = "category IN (:categories)";
+            params.addValue("categories", filter.getCategories().stream().map(Enum::name).toList());
+        }
+        String priceCondition = "TRUE";
+        if (filter.getMinPrice() != null) {
+            priceCondition = "price >= :minPrice";
+            params.addValue("minPrice", filter.getMinPrice());
+        }
+        if (filter.getMaxPrice() != null) {
+            priceCondition = (filter.getMinPrice() != null ? priceCondition + " AND " : "") + "price <= :maxPrice";
+            params.addValue("maxPrice", filter.getMaxPrice());
+        }
+
+        Map<Category, Long> categoryCounts = new EnumMap<>(Category.class);
+        List<ProductFacets.PriceBucket> priceBuckets = new ArrayList<>();
+        String sql = FACETS.formatted(categoryCondition, "(" + priceCondition + ")", nameCondition);
+        jdbcTemplate.query(sql, params, rs -> {
+            if (rs.getInt("by_bucket") == 0) {
+                categoryCounts.put(Category.valueOf(rs.getString("category")), rs.getLong("category_count"));
+                return;
+            }
+            int bucket = rs.getInt("bucket");
+            long count = rs.getLong("bucket_count");
+            if (bucket < 1 || bucket > buckets || count == 0) {
+                return; // Only rows outside the selected categories fell into this bucket
+            }
+            double low = rs.getDouble("low");
+            double width = (rs.getDouble("high") - low) / buckets;
+            double to = width > 0 ? low + bucket * width : low;
+            priceBuckets.add(new ProductFacets.PriceBucket(low + (bucket - 1) * width, to, count));
+        });
+        priceBuckets.sort(Comparator.comparingDouble(ProductFacets.PriceBucket::from));
+        List<ProductFacets.CategoryCount> categories = Arrays.stream(Category.values())
+                .map(category -> new ProductFacets.CategoryCount(category, categoryCounts.getOrDefault(category, 0L)))
+                .toList();
+        return new ProductFacets(categories, priceBuckets);
+    }
+
+    public boolean isTrigramAvailable() {
+        if (trigramAvailable == null) {
+            try {
+                trigramAvailable = Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                        "SELECT EXISTS (SELECT 1 FROM pg_extension WHERE extname = 'pg_trgm')", Map.of(), Boolean.class));
+            } catch (DataAccessException e) {
+                trigramAvailable = false; // Not PostgreSQL
+            }
+        }
+        return trigramAvailable;
+    }
+
+    private static String escapeLike(String term) {
+        return term.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+}
@@ -0,0 +1,50 @@
+package org.example.imsbackend.repositories;
+
+import lombok.RequiredArgsConstructor;
+import org.example.imsbackend.enums.Category;
+import org.example.imsbackend.models.Product;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+// Stock deltas applied in the database without loading the product first. The row lock is only held by the single
+// UPDATE, and version and updated_at move like a JPA update so optimistic locking and conditional reads see the change.
+@Repository
+@RequiredArgsConstructor
+public class ProductStockRepository {
+    private static final String ADD_STOCK = """
+            UPDATE products
+            SET stock = stock + :delta, version = version + 1, updated_at = now()
+            WHERE id = :id AND stock + :delta >= 0
+            RETURNING id, name, description, price, initial_stock, minimum_stock, stock, category, version, updated_at
+            """;
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    // The product after the change, empty when it does not exist or the stock would drop below zero
+    public Optional<Product> addStock(UUID id, int delta) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("id", id)
+                .addValue("delta", delta);
+        List<Product> updated = jdbcTemplate.query(ADD_STOCK, params, (rs, rowNum) -> {
+            Product product = new Product();
+            product.setId(rs.getObject("id", UUID.class));
+            product.setName(rs.getString("name"));
+            product.setDescription(rs.getString("description"));
+            product.setPrice(rs.getDouble("price"));
+            product.setInitialStock(rs.getInt("initial_stock"));
+            product.setMinimumStock(rs.getInt("minimum_stock"));
+            product.setStock(rs.getInt("stock"));
+            product.setCategory(Category.valueOf(rs.getString("category")));
+            product.setVersion(rs.getLong("version"));
+            product.setUpdatedAt(rs.getObject("updated_at", OffsetDateTime.class).toInstant());
+            return product;
+        });
+        return updated.stream().findFirst();
+    }
+}
@@ -0,0 +1,61 @@
+package org.example.imsbackend.repositories;
+
+import lombok.RequiredArgsConstructor;
+import org.example.imsbackend.models.StockMovement;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Types;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+// Plain JDBC batch insert of stock movements for the write paths that never load them as entities. Ids are generated
+// here like GenerationType.UUID does.
+@Repository
+@RequiredArgsConstructor
+public class StockMovementBatchRepository {
+    private static final String INSERT = """
+            INSERT INTO stock_movements (id, date, type, product_id, name, username, quantity, action, category, reason)
+            VALUES (:id, :date, :type, :productId, :name, :username, :quantity, :action, :category, :reason)
+            """;
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    public void insertAll(List<StockMovement> movements) {
+        if (movements.isEmpty()) {
+            return;
+        }
+        SqlParameterSource[] batch = new SqlParameterSource[movements.size()];
+        for (int i = 0; i < batch.length; i++) {
+            StockMovement movement = movements.get(i);
+            if (movement.getId() == null) {
+                movement.setId(UUID.randomUUID());
+            }
+            batch[i] = new MapSqlParameterSource()
+                    .addValue("id", movement.getId())
+                    .addValue("date", movement.getDate())
+                    .addValue("type", movement.getType().name())
+                    .addValue("productId", movement.getProduct().getProductId())
+                    .addValue("name", movement.getProduct().getName())
+                    .addValue("username", movement.getUsername())
+                    .addValue("quantity", movement.getQuantity())
+                    .addValue("action", movement.getAction().name())
+                    .addValue("category", movement.getCategory() != null ? movement.getCategory().name() : null, Types.VARCHAR)
+                    .addValue("reason", movement.getReason(), Types.VARCHAR);
+        }
+        jdbcTemplate.batchUpdate(INSERT, batch);
+    }
+
+    public Set<UUID> existingIds(Collection<UUID> ids) {
+        if (ids.isEmpty()) {
+            return Set.of();
+        }
+        return new HashSet<>(jdbcTemplate.queryForList("SELECT id FROM stock_movements WHERE id IN (:ids)",
+                new MapSqlParameterSource("ids", ids), UUID.class));
+    }
+}
@@ -1,31 +1,60 @@
 package org.example.imsbackend.repositories;
 
+import jakarta.persistence.QueryHint;
 import jakarta.validation.constraints.NotNull;
-import org.example.imsbackend.dto.UsernameCount;
+import org.example.imsbackend.dto.StockMovementDTO;
 import org.example.imsbackend.enums.Category;
+import org.example.imsbackend.enums.StockMovementAction;
 import org.example.imsbackend.enums.StockMovementType;
 import org.example.imsbackend.models.StockMovement;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.UUID;
+import java.util.stream.Stream;
 
 public interface StockMovementRepository extends JpaRepository<StockMovement, UUID>, JpaSpecificationExecutor<StockMovement> {
-    //Find all stock movements on descending date
-    Page<StockMovement> findAllByOrderByDateDesc(Pageable pageable);
+    //Stock movements on descending date projected to DTOs, no entity is loaded
+    @Transactional(readOnly = true)
+    @Query(value = "SELECT new org.example.imsbackend.dto.StockMovementDTO(sm.id, sm.date, sm.type, sm.product.productId, sm.product.name, sm.username, sm.quantity, sm.action, sm.reason) FROM StockMovement sm ORDER BY sm.date DESC",
+            countQuery = "SELECT COUNT(sm) FROM StockMovement sm")
+    Page<StockMovementDTO> findAllDtos(Pageable pageable);
+
+    //First keyset page of the stock movement history, loaded read-only
+    @Transactional(readOnly = true)
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"))
+    List<StockMovement> findAllByOrderByDateDescIdAsc(Limit limit);
+    //Keyset page after (date, id), the redundant date bound lets the index range scan start at the cursor
+    @Transactional(readOnly = true)
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"))
+    @Query("SELECT sm FROM StockMovement sm WHERE sm.date <= :date AND (sm.date < :date OR (sm.date = :date AND sm.id > :id)) ORDER BY sm.date DESC, sm.id ASC")
+    List<StockMovement> findAllAfter(@Param("date") LocalDateTime date, @Param("id") UUID id, Limit limit);
+
+    //Movements in [from, to) newest first through a server-side cursor, null filters match everything. Must be consumed
+    //inside a transaction
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"))
+    @Query("SELECT new org.example.imsbackend.dto.StockMovementDTO(sm.id, sm.date, sm.type, sm.product.productId, sm.product.name, sm.username, sm.quantity, sm.action, sm.reason) " +
+            "FROM StockMovement sm WHERE sm.date >= :from AND sm.date < :to " +
+            "AND (:type IS NULL OR sm.type = :type) AND (:action IS NULL OR sm.action = :action) AND (:username IS NULL OR sm.username = :username) " +
+            "ORDER BY sm.date DESC, sm.id ASC")
+    Stream<StockMovementDTO> streamForExport(@Param("from") LocalDateTime from, @Param("to") LocalDateTime to,
+                                             @Param("type") StockMovementType type, @Param("action") StockMovementAction action,
+                                             @Param("username") String username);
 
     //Movement count after a specific date separated by type
     long countByTypeAndDateAfter(@NotNull(message = "Type cannot be null") StockMovementType type, @NotNull(message = "Date cannot be null") LocalDateTime date);
     //Movement count between 2 specific dates by type
     long countByTypeAndDateBetween(@NotNull(message = "Type cannot be null") StockMovementType type, @NotNull(message = "Date cannot be null") LocalDateTime date, @NotNull(message = "Date cannot be null") LocalDateTime date2);
-    // Movement count grouped by username after a specific date
-    @Query("SELECT sm.username AS username, COUNT(sm) AS count FROM StockMovement sm WHERE sm.date > ?1 GROUP BY sm.username ORDER BY count DESC")
-    List<UsernameCount> countByUsernameAfter(LocalDateTime date);
     @Query("SELECT COUNT(sm) FROM StockMovement sm JOIN Product p ON sm.product.productId = p.id WHERE p.category = ?1")
     long countByProductCategory(Category category);
 }
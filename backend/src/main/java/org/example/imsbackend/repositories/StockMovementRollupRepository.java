@@ -0,0 +1,290 @@
+package org.example.imsbackend.repositories;
+
+import lombok.RequiredArgsConstructor;
+import org.example.imsbackend.dto.DailyMovementCount;
+import org.example.imsbackend.dto.HourlyCount;
+import org.example.imsbackend.dto.MovementBucket;
+import org.example.imsbackend.dto.StatsData;
+import org.example.imsbackend.enums.Category;
+import org.example.imsbackend.enums.HistogramGranularity;
+import org.example.imsbackend.enums.LeaderboardDimension;
+import org.example.imsbackend.enums.StockMovementType;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+// Time-series reads over hourly movement counts. stock_movement_rollups holds the hours before the watermark kept in
+// stock_movement_rollup_state, rollUp() moves the watermark forward and the reads add the movements after it straight
+// from stock_movements, so writers never touch a shared counter row.
+// Windows are resolved to whole hour buckets, so a window starts at the beginning of the hour of its lower bound.
+// Minute histograms and product leaderboards are finer than the rollups and always scan stock_movements.
+@Repository
+@RequiredArgsConstructor
+public class StockMovementRollupRepository {
+    // Movements without a category (recorded through the API or before it was captured) take the current one
+    private static final String HOURLY_COUNTS = """
+            SELECT date_trunc('hour', sm.date) AS bucket, sm.type, COALESCE(sm.category, p.category, 'UNKNOWN') AS category,
+                   sm.username, COUNT(*) AS movement_count, COALESCE(SUM(sm.quantity), 0) AS quantity
+            FROM stock_movements sm
+                     LEFT JOIN products p ON p.id = sm.product_id
+            """;
+
+    private static final String ROLL_UP = """
+            INSERT INTO stock_movement_rollups (bucket, type, category, username, movement_count, quantity)
+            """ + HOURLY_COUNTS + """
+            WHERE sm.date >= :from AND sm.date < :to
+            GROUP BY 1, 2, 3, 4
+            ON CONFLICT (bucket, type, category, username)
+                DO UPDATE SET movement_count = stock_movement_rollups.movement_count + EXCLUDED.movement_count,
+                              quantity       = stock_movement_rollups.quantity + EXCLUDED.quantity
+            """;
+
+    // Movements inserted with a date before the watermark, the job has already rolled up their hours
+    private static final String ROLL_UP_LATE = """
+            INSERT INTO stock_movement_rollups (bucket, type, category, username, movement_count, quantity)
+            """ + HOURLY_COUNTS + """
+            WHERE sm.id IN (:ids) AND sm.date < :watermark
+            GROUP BY 1, 2, 3, 4
+            ON CONFLICT (bucket, type, category, username)
+                DO UPDATE SET movement_count = stock_movement_rollups.movement_count + EXCLUDED.movement_count,
+                              quantity       = stock_movement_rollups.quantity + EXCLUDED.quantity
+            """;
+
+    // Rolled up hours plus the movements after the watermark, read as one table by the queries below
+    private static final String WITH_COUNTS = """
+            WITH counts AS (SELECT bucket, type, category, username, movement_count, quantity
+                            FROM stock_movement_rollups
+                            UNION ALL
+                            """ + HOURLY_COUNTS + """
+                            WHERE sm.date >= (SELECT rolled_up_to FROM stock_movement_rollup_state WHERE id = 1)
+                            GROUP BY 1, 2, 3, 4)
+            """;
+
+    private static final String COUNT_BY_TYPE_BETWEEN = WITH_COUNTS + """
+            SELECT COALESCE(SUM(movement_count), 0)
+            FROM counts
+            WHERE type = :type AND bucket >= date_trunc('hour', CAST(:start AS TIMESTAMP)) AND bucket < :end
+            """;
+
+    private static final String DAILY_COUNTS = WITH_COUNTS + """
+            SELECT date_trunc('day', bucket) AS day,
+                   COALESCE(SUM(movement_count) FILTER (WHERE type = 'INCOMING'), 0) AS incoming,
+                   COALESCE(SUM(movement_count) FILTER (WHERE type = 'OUTGOING'), 0) AS outgoing
+            FROM counts
+            WHERE bucket >= date_trunc('hour', CAST(:since AS TIMESTAMP))
+            GROUP BY day
+            ORDER BY day
+            """;
+
+    private static final String MOVEMENTS_SINCE = WITH_COUNTS + """
+            SELECT username, movements, total_in, total_out
+            FROM (SELECT username,
+                         SUM(movement_count) AS movements,
+                         SUM(SUM(movement_count) FILTER (WHERE type = 'INCOMING')) OVER () AS total_in,
+                         SUM(SUM(movement_count) FILTER (WHERE type = 'OUTGOING')) OVER () AS total_out,
+                         ROW_NUMBER() OVER (ORDER BY SUM(movement_count) DESC, username) AS user_rank
+                  FROM counts
+                  WHERE bucket >= date_trunc('hour', CAST(:since AS TIMESTAMP))
+                  GROUP BY username) ranked
+            WHERE user_rank <= :limit
+            ORDER BY user_rank
+            """;
+
+    private static final String HISTOGRAM = WITH_COUNTS + """
+            SELECT date_trunc(CAST(:unit AS TEXT), bucket) AS bucket_start,
+                   COALESCE(SUM(movement_count) FILTER (WHERE type = 'INCOMING'), 0) AS incoming,
+                   COALESCE(SUM(movement_count) FILTER (WHERE type = 'OUTGOING'), 0) AS outgoing
+            FROM counts
+            WHERE bucket >= date_trunc('hour', CAST(:from AS TIMESTAMP)) AND bucket < :to
+            GROUP BY bucket_start
+            ORDER BY bucket_start
+            LIMIT :limit
+            """;
+
+    private static final String MINUTE_HISTOGRAM = """
+            SELECT date_trunc('minute', sm.date) AS bucket_start,
+                   COUNT(*) FILTER (WHERE sm.type = 'INCOMING') AS incoming,
+                   COUNT(*) FILTER (WHERE sm.type = 'OUTGOING') AS outgoing
+            FROM stock_movements sm
+            WHERE sm.date >= :from AND sm.date < :to
+            GROUP BY bucket_start
+            ORDER BY bucket_start
+            LIMIT :limit
+            """;
+
+    private static final String USERNAME_LEADERBOARD = WITH_COUNTS + """
+            SELECT username AS label, SUM(movement_count) AS movements
+            FROM counts
+            WHERE bucket >= date_trunc('hour', CAST(:from AS TIMESTAMP)) AND bucket < :to
+            GROUP BY username
+            ORDER BY movements DESC, label
+            LIMIT :limit
+            """;
+
+    private static final String CATEGORY_LEADERBOARD = WITH_COUNTS + """
+            SELECT category AS label, SUM(movement_count) AS movements
+            FROM counts
+            WHERE bucket >= date_trunc('hour', CAST(:from AS TIMESTAMP)) AND bucket < :to
+            GROUP BY category
+            ORDER BY movements DESC, label
+            LIMIT :limit
+            """;
+
+    private static final String PRODUCT_LEADERBOARD = """
+            SELECT MAX(sm.name) AS label, COUNT(*) AS movements
+            FROM stock_movements sm
+            WHERE sm.date >= :from AND sm.date < :to
+            GROUP BY sm.product_id
+            ORDER BY movements DESC, label
+            LIMIT :limit
+            """;
+
+    private static final String HOURLY_USERNAME_COUNTS = WITH_COUNTS + """
+            SELECT bucket AS hour_bucket, username AS entry_key, username AS label, SUM(movement_count) AS movements
+            FROM counts
+            WHERE bucket >= date_trunc('hour', CAST(:since AS TIMESTAMP))
+            GROUP BY bucket, username
+            """;
+
+    private static final String HOURLY_PRODUCT_COUNTS = """
+            SELECT date_trunc('hour', sm.date) AS hour_bucket, CAST(sm.product_id AS TEXT) AS entry_key,
+                   MAX(sm.name) AS label, COUNT(*) AS movements
+            FROM stock_movements sm
+            WHERE sm.date >= date_trunc('hour', CAST(:since AS TIMESTAMP))
+            GROUP BY hour_bucket, sm.product_id
+            """;
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    public long countByTypeSince(StockMovementType type, LocalDateTime since) {
+        return countByTypeBetween(type, since, LocalDateTime.now().plusHours(1));
+    }
+
+    public long countByTypeBetween(StockMovementType type, LocalDateTime start, LocalDateTime end) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("type", type.name())
+                .addValue("start", start)
+                .addValue("end", end);
+        Long count = jdbcTemplate.queryForObject(COUNT_BY_TYPE_BETWEEN, params, Long.class);
+        return count != null ? count : 0;
+    }
+
+    public List<DailyMovementCount> dailyCountsSince(LocalDateTime since) {
+        return jdbcTemplate.query(DAILY_COUNTS, new MapSqlParameterSource("since", since), (rs, rowNum) -> new DailyMovementCount(
+                rs.getObject("day", LocalDateTime.class),
+                rs.getLong("incoming"),
+                rs.getLong("outgoing")));
+    }
+
+    public StatsData.MovementsLast24Hours movementsSince(LocalDateTime since, int topUsers) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("since", since)
+                .addValue("limit", topUsers);
+        List<StatsData.ObjectCount> users = new ArrayList<>();
+        long[] totals = new long[2];
+        jdbcTemplate.query(MOVEMENTS_SINCE, params, rs -> {
+            users.add(new StatsData.ObjectCount(rs.getString("username"), rs.getLong("movements")));
+            totals[0] = rs.getLong("total_in");
+            totals[1] = rs.getLong("total_out");
+        });
+        return new StatsData.MovementsLast24Hours(totals[0], totals[1], users);
+    }
+
+    public List<MovementBucket> histogram(HistogramGranularity granularity, LocalDateTime from, LocalDateTime to, int maxBuckets) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("unit", granularity.getTruncUnit())
+                .addValue("from", from)
+                .addValue("to", to)
+                .addValue("limit", maxBuckets);
+        String sql = granularity == HistogramGranularity.MINUTE ? MINUTE_HISTOGRAM : HISTOGRAM;
+        return jdbcTemplate.query(sql, params, (rs, rowNum) -> new MovementBucket(
+                rs.getObject("bucket_start", LocalDateTime.class),
+                rs.getLong("incoming"),
+                rs.getLong("outgoing")));
+    }
+
+    public List<StatsData.ObjectCount> leaderboard(LeaderboardDimension dimension, LocalDateTime from, LocalDateTime to, int limit) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("from", from)
+                .addValue("to", to)
+                .addValue("limit", limit);
+        String sql = switch (dimension) {
+            case USERNAME -> USERNAME_LEADERBOARD;
+            case CATEGORY -> CATEGORY_LEADERBOARD;
+            case PRODUCT -> PRODUCT_LEADERBOARD;
+        };
+        return jdbcTemplate.query(sql, params, (rs, rowNum) -> new StatsData.ObjectCount(
+                dimension == LeaderboardDimension.CATEGORY ? categoryLabel(rs.getString("label")) : rs.getString("label"),
+                rs.getLong("movements")));
+    }
+
+    // Per hour counts used to load the in-memory leaderboards, categories are always read with leaderboard()
+    public List<HourlyCount> hourlyCountsSince(LeaderboardDimension dimension, LocalDateTime since) {
+        String sql = switch (dimension) {
+            case USERNAME -> HOURLY_USERNAME_COUNTS;
+            case PRODUCT -> HOURLY_PRODUCT_COUNTS;
+            case CATEGORY -> throw new IllegalArgumentException("Category leaderboards are not kept in memory");
+        };
+        return jdbcTemplate.query(sql, new MapSqlParameterSource("since", since), (rs, rowNum) -> new HourlyCount(
+                rs.getObject("hour_bucket", LocalDateTime.class),
+                rs.getString("entry_key"),
+                rs.getString("label"),
+                rs.getLong("movements")));
+    }
+
+    // Adds the movements dated between the watermark and upTo to the rollups and moves the watermark to upTo. The row
+    // lock on the watermark keeps instances from rolling up the same hours twice
+    @Transactional
+    public void rollUp(LocalDateTime upTo) {
+        LocalDateTime from = jdbcTemplate.queryForObject(
+                "SELECT rolled_up_to FROM stock_movement_rollup_state WHERE id = 1 FOR UPDATE", Map.of(), LocalDateTime.class);
+        if (from == null || !from.isBefore(upTo)) {
+            return;
+        }
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("from", from)
+                .addValue("to", upTo);
+        jdbcTemplate.update(ROLL_UP, params);
+        jdbcTemplate.update("UPDATE stock_movement_rollup_state SET rolled_up_to = :to WHERE id = 1", params);
+    }
+
+    // Called in the transaction that inserts the movements, e.g. stock deltas replayed from the journal after an outage
+    // longer than the grace period. The ones dated before the watermark are added to their hours here, the share lock
+    // keeps rollUp() from moving the watermark until this transaction ends so it counts the others itself
+    @Transactional
+    public void rollUpLate(Collection<UUID> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        LocalDateTime watermark = jdbcTemplate.queryForObject(
+                "SELECT rolled_up_to FROM stock_movement_rollup_state WHERE id = 1 FOR SHARE", Map.of(), LocalDateTime.class);
+        if (watermark == null) {
+            return;
+        }
+        jdbcTemplate.update(ROLL_UP_LATE, new MapSqlParameterSource()
+                .addValue("ids", ids)
+                .addValue("watermark", watermark));
+    }
+
+    public void deleteAll() {
+        jdbcTemplate.update("DELETE FROM stock_movement_rollups", Map.of());
+    }
+
+    // Movements of deleted products are rolled up under UNKNOWN
+    private static String categoryLabel(String category) {
+        return Arrays.stream(Category.values())
+                .filter(value -> value.name().equals(category))
+                .map(Category::getDisplayName)
+                .findFirst()
+                .orElse(category);
+    }
+}
@@ -1,86 +1,226 @@
 package org.example.imsbackend.services;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.example.imsbackend.components.InventoryCounters;
+import org.example.imsbackend.components.MovementLeaderboard;
+import org.example.imsbackend.dto.CategoryInventory;
+import org.example.imsbackend.dto.DailyMovementCount;
+import org.example.imsbackend.dto.LeaderboardDTO;
+import org.example.imsbackend.dto.LeaderboardFilter;
+import org.example.imsbackend.dto.MovementHistogramDTO;
+import org.example.imsbackend.dto.ProductDTO;
+import org.example.imsbackend.dto.MovementHistogramFilter;
 import org.example.imsbackend.dto.StatsData;
 import org.example.imsbackend.dto.StockMovementFilter;
-import org.example.imsbackend.dto.UsernameCount;
-import org.example.imsbackend.enums.StockMovementType;
-import org.example.imsbackend.models.Product;
+import org.example.imsbackend.enums.Category;
+import org.example.imsbackend.enums.HistogramGranularity;
+import org.example.imsbackend.enums.LeaderboardDimension;
+import org.example.imsbackend.repositories.DashboardStatsRepository;
+import org.example.imsbackend.repositories.StockMovementRollupRepository;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
-import org.springframework.data.util.Pair;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
+@Slf4j
 @RequiredArgsConstructor
 @Service
 public class DashboardService {
-    private final StockMovementService stockMovementService;
+    private static final int TOP_USERS = 3;
+    private static final int HISTOGRAM_DAYS = 7;
+
     private final ProductService productService;
+    private final DashboardStatsRepository dashboardStatsRepository;
+    private final InventoryCounters inventoryCounters;
+    private final StockMovementRollupRepository stockMovementRollupRepository;
+    private final MovementLeaderboard movementLeaderboard;
+    private final MeterRegistry meterRegistry;
+
+    // Database sections run concurrently on virtual threads, the semaphore bounds the pool connections they can hold
+    private final ExecutorService sectionExecutor = Executors.newVirtualThreadPerTaskExecutor();
+    private Semaphore sectionPermits = new Semaphore(4);
+
+    @Value("${ims.dashboard.histogram.max-buckets:5000}")
+    private int maxHistogramBuckets = 5000;
+    @Value("${ims.dashboard.leaderboard.max-limit:100}")
+    private int maxLeaderboardLimit;
+    @Value("${ims.dashboard.sections.timeout-ms:2000}")
+    private long sectionTimeoutMs = 2000;
+
+    @Value("${ims.dashboard.sections.max-concurrency:4}")
+    void setMaxSectionConcurrency(int maxSectionConcurrency) {
+        this.sectionPermits = new Semaphore(maxSectionConcurrency);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        sectionExecutor.shutdownNow();
+    }
 
+    // A section that fails or does not finish within the timeout is left null and the rest of the stats are returned
     public StatsData getStats() {
-        StatsData statsData = new StatsData();
-        statsData.setSummary(getSummary());
-        statsData.setCategoriesDistribution(getCategoriesDistribution());
-        statsData.setCategoriesMovement(getCategoriesMovement());
-        statsData.setMovementsLast24Hours(getStockMovementLast24Hours());
-        statsData.setMovementsLast7Days(getStockMovementLast7Days());
-        return statsData;
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(sectionTimeoutMs);
+        Future<List<StatsData.ObjectCount>> categoriesMovement = submitSection(this::getCategoriesMovement);
+        Future<StatsData.MovementsLast24Hours> movementsLast24Hours = submitSection(this::getStockMovementLast24Hours);
+        Future<StatsData.MovementsLast7Days> movementsLast7Days = submitSection(this::getStockMovementLast7Days);
+
+        // Summary and categories distribution are read from the in-memory counters
+        Map<Category, CategoryInventory> inventory = inventoryCounters.snapshot().stream()
+                .collect(Collectors.toMap(CategoryInventory::category, Function.identity(), (a, b) -> a, () -> new EnumMap<>(Category.class)));
+
+        return new StatsData(
+                getSummary(inventory),
+                getCategoriesDistribution(inventory),
+                awaitSection("categoriesMovement", categoriesMovement, deadline),
+                awaitSection("movementsLast24Hours", movementsLast24Hours, deadline),
+                awaitSection("movementsLast7Days", movementsLast7Days, deadline));
+    }
+
+    // Movement histogram over an arbitrary window, throws IllegalArgumentException for invalid or too large windows
+    public MovementHistogramDTO getMovementHistogram(MovementHistogramFilter filter) {
+        HistogramGranularity granularity = HistogramGranularity.valueOf(filter.getGranularity().toUpperCase());
+        LocalDateTime to = filter.getTo() != null ? filter.getTo() : LocalDateTime.now();
+        LocalDateTime from = filter.getFrom() != null ? filter.getFrom() : to.minusDays(1);
+        if (!from.isBefore(to)) {
+            throw new IllegalArgumentException("from must be before to");
+        }
+        long buckets = Duration.between(from, to).dividedBy(granularity.getMinimumLength()) + 1;
+        if (buckets > maxHistogramBuckets) {
+            throw new IllegalArgumentException("The requested window exceeds " + maxHistogramBuckets + " buckets");
+        }
+        return new MovementHistogramDTO(granularity.name(), from, to,
+                stockMovementRollupRepository.histogram(granularity, from, to, maxHistogramBuckets));
+    }
+
+    // Top-N leaderboard over a window, open-ended windows within the last 24 hours are served from memory
+    public LeaderboardDTO getLeaderboard(LeaderboardFilter filter) {
+        LeaderboardDimension dimension = LeaderboardDimension.valueOf(filter.getDimension().toUpperCase());
+        if (filter.getLimit() < 1 || filter.getLimit() > maxLeaderboardLimit) {
+            throw new IllegalArgumentException("limit must be between 1 and " + maxLeaderboardLimit);
+        }
+        LocalDateTime to = filter.getTo() != null ? filter.getTo() : LocalDateTime.now();
+        LocalDateTime from = filter.getFrom() != null ? filter.getFrom() : to.minusDays(1);
+        if (!from.isBefore(to)) {
+            throw new IllegalArgumentException("from must be before to");
+        }
+        Optional<List<StatsData.ObjectCount>> hot = filter.getTo() == null
+                ? movementLeaderboard.top(dimension, from, filter.getLimit())
+                : Optional.empty();
+        List<StatsData.ObjectCount> entries = hot.orElseGet(
+                () -> stockMovementRollupRepository.leaderboard(dimension, from, to, filter.getLimit()));
+        return new LeaderboardDTO(dimension.name(), from, to, entries);
+    }
+
+    private <T> Future<T> submitSection(Callable<T> section) {
+        return sectionExecutor.submit(() -> {
+            sectionPermits.acquire();
+            try {
+                return section.call();
+            } finally {
+                sectionPermits.release();
+            }
+        });
+    }
+
+    private <T> T awaitSection(String name, Future<T> section, long deadline) {
+        try {
+            return section.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            section.cancel(true);
+            log.warn("Dashboard section {} timed out, returning partial stats", name);
+            return partialSection(name, "timeout");
+        } catch (InterruptedException e) {
+            section.cancel(true);
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            log.warn("Dashboard section {} failed, returning partial stats", name, e.getCause());
+            return partialSection(name, "failure");
+        }
+    }
+
+    private <T> T partialSection(String name, String reason) {
+        Counter.builder("ims.dashboard.sections.partial").tag("section", name).tag("reason", reason)
+                .register(meterRegistry).increment();
+        return null;
     }
 
     // products bellow min stock
-    public Page<Product> getProductsBelowMinStock(StockMovementFilter filter) {
+    public Page<ProductDTO> getProductsBelowMinStock(StockMovementFilter filter) {
         return productService.productsBelowMinimumStock(filter);
     }
 
     //Summary
-    private StatsData.Summary getSummary(){
-        long totalProducts = productService.countProducts();
-        long totalStock = productService.totalStock();
-        double totalValue = productService.totalInventoryValue();
+    private StatsData.Summary getSummary(Map<Category, CategoryInventory> inventory){
+        long totalProducts = 0;
+        long totalStock = 0;
+        double totalValue = 0;
+        for (CategoryInventory categoryInventory : inventory.values()) {
+            totalProducts += categoryInventory.products();
+            totalStock += categoryInventory.stock();
+            totalValue += categoryInventory.value();
+        }
         return new StatsData.Summary(totalProducts, totalStock, totalValue);
     }
 
     //Categories distribution
-    private List<StatsData.ObjectCount> getCategoriesDistribution(){
-        return productService.countProductsByCategory().entrySet().stream()
-                .map(entry -> new StatsData.ObjectCount(entry.getKey().getDisplayName(), entry.getValue()))
+    private List<StatsData.ObjectCount> getCategoriesDistribution(Map<Category, CategoryInventory> inventory){
+        return Arrays.stream(Category.values())
+                .map(category -> new StatsData.ObjectCount(category.getDisplayName(),
+                        inventory.containsKey(category) ? inventory.get(category).products() : 0))
                 .toList();
     }
 
     //Categories movement
     private List<StatsData.ObjectCount> getCategoriesMovement(){
-        return stockMovementService.countMovementsByCategory().entrySet().stream()
-                .map(entry -> new StatsData.ObjectCount(entry.getKey().getDisplayName(), entry.getValue()))
+        Map<Category, Long> movements = dashboardStatsRepository.movementsByCategory();
+        return Arrays.stream(Category.values())
+                .map(category -> new StatsData.ObjectCount(category.getDisplayName(), movements.getOrDefault(category, 0L)))
                 .toList();
     }
 
     // Movements last 24 hours
     private StatsData.MovementsLast24Hours getStockMovementLast24Hours(){
-        long in = stockMovementService.countStockMovementsByTypeInLast24Hours(StockMovementType.INCOMING, LocalDateTime.now().minusDays(1));
-        long out = stockMovementService.countStockMovementsByTypeInLast24Hours(StockMovementType.OUTGOING, LocalDateTime.now().minusDays(1));
-        List<UsernameCount> usernameCounts = stockMovementService.countStockMovementsByUsernameInLast24Hours(LocalDateTime.now().minusDays(1));
-        //just top 3
-        if (usernameCounts.size() > 3) {
-            usernameCounts = usernameCounts.subList(0, 3);
-        }
-        List<StatsData.ObjectCount> topUsers = usernameCounts.stream()
-                .map(uc -> new StatsData.ObjectCount(uc.getUsername(), uc.getCount()))
-                .toList();
-        return new StatsData.MovementsLast24Hours(in, out, topUsers);
+        return stockMovementRollupRepository.movementsSince(LocalDateTime.now().minusDays(1), TOP_USERS);
     }
 
     // Movements last 7 days
     private StatsData.MovementsLast7Days getStockMovementLast7Days(){
-        List<Pair<LocalDateTime, Long>> in = stockMovementService.stockMovementsLast7Days(StockMovementType.INCOMING);
-        List<Pair<LocalDateTime, Long>> out = stockMovementService.stockMovementsLast7Days(StockMovementType.OUTGOING);
-        List<StatsData.MovementCount> inCounts = in.stream()
-                .map(pair -> new StatsData.MovementCount(pair.getFirst(), pair.getSecond()))
-                .toList();
-        List<StatsData.MovementCount> outCounts = out.stream()
-                .map(pair -> new StatsData.MovementCount(pair.getFirst(), pair.getSecond()))
-                .toList();
+        LocalDateTime firstDay = LocalDate.now().minusDays(HISTOGRAM_DAYS - 1).atStartOfDay();
+        Map<LocalDateTime, DailyMovementCount> counts = stockMovementRollupRepository.dailyCountsSince(firstDay).stream()
+                .collect(Collectors.toMap(DailyMovementCount::day, Function.identity()));
+        // Days without movements are not returned by the grouped query, fill them with zeros
+        List<StatsData.MovementCount> inCounts = new ArrayList<>(HISTOGRAM_DAYS);
+        List<StatsData.MovementCount> outCounts = new ArrayList<>(HISTOGRAM_DAYS);
+        for (int i = 0; i < HISTOGRAM_DAYS; i++) {
+            LocalDateTime day = firstDay.plusDays(i);
+            DailyMovementCount count = counts.get(day);
+            inCounts.add(new StatsData.MovementCount(day, count != null ? count.in() : 0));
+            outCounts.add(new StatsData.MovementCount(day, count != null ? count.out() : 0));
+        }
         return new StatsData.MovementsLast7Days(inCounts, outCounts);
     }
 }
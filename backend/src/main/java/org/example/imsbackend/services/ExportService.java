@@ -0,0 +1,136 @@
+package org.example.imsbackend.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import org.example.imsbackend.dto.ProductDTO;
+import org.example.imsbackend.dto.StockMovementDTO;
+import org.example.imsbackend.dto.StockMovementExportFilter;
+import org.example.imsbackend.enums.ExportFormat;
+import org.example.imsbackend.enums.StockMovementAction;
+import org.example.imsbackend.enums.StockMovementType;
+import org.example.imsbackend.repositories.ProductRepository;
+import org.example.imsbackend.repositories.StockMovementRepository;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDateTime;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+@Service
+@RequiredArgsConstructor
+public class ExportService {
+    private static final Map<String, Function<ProductDTO, Object>> PRODUCT_COLUMNS = new LinkedHashMap<>();
+
+    static {
+        PRODUCT_COLUMNS.put("id", ProductDTO::id);
+        PRODUCT_COLUMNS.put("name", ProductDTO::name);
+        PRODUCT_COLUMNS.put("description", ProductDTO::description);
+        PRODUCT_COLUMNS.put("price", ProductDTO::price);
+        PRODUCT_COLUMNS.put("initialStock", ProductDTO::initialStock);
+        PRODUCT_COLUMNS.put("minimumStock", ProductDTO::minimumStock);
+        PRODUCT_COLUMNS.put("stock", ProductDTO::stock);
+        PRODUCT_COLUMNS.put("category", ProductDTO::category);
+    }
+
+    private static final Map<String, Function<StockMovementDTO, Object>> STOCK_MOVEMENT_COLUMNS = new LinkedHashMap<>();
+
+    static {
+        STOCK_MOVEMENT_COLUMNS.put("id", StockMovementDTO::id);
+        STOCK_MOVEMENT_COLUMNS.put("date", StockMovementDTO::date);
+        STOCK_MOVEMENT_COLUMNS.put("type", StockMovementDTO::type);
+        STOCK_MOVEMENT_COLUMNS.put("productId", movement -> movement.product().productId());
+        STOCK_MOVEMENT_COLUMNS.put("productName", movement -> movement.product().name());
+        STOCK_MOVEMENT_COLUMNS.put("username", StockMovementDTO::username);
+        STOCK_MOVEMENT_COLUMNS.put("quantity", StockMovementDTO::quantity);
+        STOCK_MOVEMENT_COLUMNS.put("action", StockMovementDTO::action);
+        STOCK_MOVEMENT_COLUMNS.put("reason", StockMovementDTO::reason);
+    }
+
+    private final ProductRepository productRepository;
+    private final StockMovementRepository stockMovementRepository;
+    private final ObjectMapper objectMapper;
+
+    // Streams the whole catalogue from a database cursor to out and closes it, returns the number of products written
+    @Transactional(readOnly = true)
+    public long exportProducts(ExportFormat format, OutputStream out) throws IOException {
+        try (Stream<ProductDTO> products = productRepository.streamAll();
+             ExportWriter<ProductDTO> writer = ExportWriter.open(format, out, objectMapper, PRODUCT_COLUMNS)) {
+            for (Iterator<ProductDTO> rows = products.iterator(); rows.hasNext(); ) {
+                writer.write(rows.next());
+            }
+            return writer.rows();
+        }
+    }
+
+    // Parses and validates the export filter before the response starts, throws IllegalArgumentException when invalid
+    public StockMovementExport stockMovementExport(StockMovementExportFilter filter) {
+        ExportFormat format = ExportFormat.valueOf(filter.getFormat().toUpperCase());
+        if (filter.getFrom() == null) {
+            throw new IllegalArgumentException("from is required");
+        }
+        LocalDateTime to = filter.getTo() != null ? filter.getTo() : LocalDateTime.now();
+        if (!filter.getFrom().isBefore(to)) {
+            throw new IllegalArgumentException("from must be before to");
+        }
+        return new StockMovementExport(format, filter.getFrom(), to,
+                filter.getType() != null ? StockMovementType.valueOf(filter.getType().toUpperCase()) : null,
+                filter.getAction() != null ? StockMovementAction.valueOf(filter.getAction().toUpperCase()) : null,
+                filter.getUsername() != null && !filter.getUsername().isBlank() ? filter.getUsername() : null);
+    }
+
+    // Streams the matching movements newest first from a database cursor to out and closes it, returns the rows written
+    @Transactional(readOnly = true)
+    public long exportStockMovements(StockMovementExport export, OutputStream out) throws IOException {
+        try (Stream<StockMovementDTO> movements = stockMovementRepository.streamForExport(export.from(), export.to(),
+                export.type(), export.action(), export.username());
+             ExportWriter<StockMovementDTO> writer = ExportWriter.open(export.format(), out, objectMapper, STOCK_MOVEMENT_COLUMNS)) {
+            for (Iterator<StockMovementDTO> rows = movements.iterator(); rows.hasNext(); ) {
+                writer.write(rows.next());
+            }
+            return writer.rows();
+        }
+    }
+
+    // Whether an Accept-Encoding header allows a gzip response. An explicit gzip coding takes precedence over *, and a
+    // coding with q=0 is refused
+    public static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        Double gzip = null;
+        Double any = null;
+        for (String element : acceptEncoding.split(",")) {
+            String[] parts = element.split(";");
+            String coding = parts[0].trim().toLowerCase(Locale.ROOT);
+            double quality = 1;
+            for (int i = 1; i < parts.length; i++) {
+                String parameter = parts[i].trim().toLowerCase(Locale.ROOT);
+                if (parameter.startsWith("q=")) {
+                    try {
+                        quality = Double.parseDouble(parameter.substring(2).trim());
+                    } catch (NumberFormatException e) {
+                        quality = 0;
+                    }
+                }
+            }
+            if (coding.equals("gzip") || coding.equals("x-gzip")) {
+                gzip = gzip != null ? Math.max(gzip, quality) : quality;
+            } else if (coding.equals("*")) {
+                any = quality;
+            }
+        }
+        Double quality = gzip != null ? gzip : any;
+        return quality != null && quality > 0;
+    }
+
+    public record StockMovementExport(ExportFormat format, LocalDateTime from, LocalDateTime to, StockMovementType type,
+                                      StockMovementAction action, String username) {
+    }
+}
@@ -0,0 +1,110 @@
+package org.example.imsbackend.services;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.example.imsbackend.enums.ExportFormat;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Writes export rows one at a time as NDJSON lines or CSV records. Nothing is kept per row, and the output is flushed
+ * every {@value #FLUSH_ROWS} rows so the client receives data while the export runs and a slow client blocks the
+ * writer instead of filling the heap.
+ */
+class ExportWriter<T> implements Closeable {
+    private static final int FLUSH_ROWS = 1000;
+
+    private final ExportFormat format;
+    private final Writer writer;
+    private final JsonGenerator json;
+    private final ObjectWriter rowWriter;
+    // CSV columns in header order
+    private final Map<String, Function<T, Object>> columns;
+    private long rows;
+
+    private ExportWriter(ExportFormat format, OutputStream out, ObjectMapper objectMapper, Map<String, Function<T, Object>> columns) throws IOException {
+        this.format = format;
+        this.writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 64 * 1024);
+        this.columns = columns;
+        if (format == ExportFormat.NDJSON) {
+            json = objectMapper.getFactory().createGenerator(writer);
+            // Rows are separated by the line breaks written after them, not by the default space
+            json.setRootValueSeparator(null);
+            rowWriter = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        } else {
+            json = null;
+            rowWriter = null;
+            writer.write(String.join(",", columns.keySet()));
+            writer.write("\r\n");
+        }
+    }
+
+    static <T> ExportWriter<T> open(ExportFormat format, OutputStream out, ObjectMapper objectMapper,
+                                    Map<String, Function<T, Object>> columns) throws IOException {
+        return new ExportWriter<>(format, out, objectMapper, columns);
+    }
+
+    void write(T row) throws IOException {
+        if (format == ExportFormat.NDJSON) {
+            rowWriter.writeValue(json, row);
+            json.writeRaw('\n');
+        } else {
+            boolean first = true;
+            for (Function<T, Object> column : columns.values()) {
+                if (!first) {
+                    writer.write(',');
+                }
+                writeCsvValue(column.apply(row));
+                first = false;
+            }
+            writer.write("\r\n");
+        }
+        if (++rows % FLUSH_ROWS == 0) {
+            flush();
+        }
+    }
+
+    long rows() {
+        return rows;
+    }
+
+    // RFC 4180 quoting, only values with a separator, quote or line break are quoted
+    private void writeCsvValue(Object value) throws IOException {
+        if (value == null) {
+            return;
+        }
+        String text = value.toString();
+        if (text.indexOf(',') < 0 && text.indexOf('"') < 0 && text.indexOf('\n') < 0 && text.indexOf('\r') < 0) {
+            writer.write(text);
+            return;
+        }
+        writer.write('"');
+        writer.write(text.replace("\"", "\"\""));
+        writer.write('"');
+    }
+
+    private void flush() throws IOException {
+        if (json != null) {
+            json.flush();
+        }
+        writer.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (json != null) {
+            json.close();
+        }
+        writer.close();
+    }
+}
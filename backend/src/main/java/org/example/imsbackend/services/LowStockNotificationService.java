@@ -1,6 +1,7 @@
 package org.example.imsbackend.services;
 
 import lombok.RequiredArgsConstructor;
+import org.example.imsbackend.dto.LowStockNotificationDTO;
 import org.example.imsbackend.dto.LowStockNotificationFilter;
 import org.example.imsbackend.models.LowStockNotification;
 import org.example.imsbackend.models.Product;
@@ -10,6 +11,7 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.validation.annotation.Validated;
 
 import java.time.LocalDateTime;
@@ -24,9 +26,10 @@ public class LowStockNotificationService {
         return lowStockNotificationRepository.save(lowStockNotification);
     }
 
-    public Page<LowStockNotification> findAll(final LowStockNotificationFilter filter) {
+    @Transactional(readOnly = true)
+    public Page<LowStockNotificationDTO> findAll(final LowStockNotificationFilter filter) {
         Pageable pageable = PageRequest.of(filter.getPage(), filter.getSize());
-        return lowStockNotificationRepository.findAllByOrderByDateDesc(pageable);
+        return lowStockNotificationRepository.findAllDtos(pageable);
     }
 
     public LowStockNotification notificationFromProduct(Product product) {
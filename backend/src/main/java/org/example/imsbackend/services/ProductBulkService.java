@@ -0,0 +1,281 @@
+package org.example.imsbackend.services;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.example.imsbackend.dto.BulkResultDTO;
+import org.example.imsbackend.dto.BulkRowResult;
+import org.example.imsbackend.dto.ProductDTO;
+import org.example.imsbackend.dto.StockAdjustmentDTO;
+import org.example.imsbackend.enums.BulkRowStatus;
+import org.example.imsbackend.enums.StockMovementAction;
+import org.example.imsbackend.mappers.ProductMapper;
+import org.example.imsbackend.models.LowStockNotification;
+import org.example.imsbackend.models.Product;
+import org.example.imsbackend.models.StockMovement;
+import org.example.imsbackend.repositories.ProductRepository;
+import org.example.imsbackend.repositories.ProductStockRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Bulk create or update of products from a JSON array read with the streaming parser. Rows are applied in chunks, each
+ * chunk in one transaction: the existing products of the chunk are loaded with one query, and the product inserts and
+ * updates, stock movements and low stock notifications are flushed together as JDBC batches. Rows without an id are
+ * created, rows with an id update that product unless it changed since the version of the row. A chunk whose
+ * transaction fails has its rows reported as FAILED, the chunks committed before it are kept and the next chunks are
+ * still applied. Batches of stock deltas sent by scanners go through {@link #adjustStock}, which never loads the
+ * products.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ProductBulkService {
+    private final ProductRepository productRepository;
+    private final ProductStockRepository productStockRepository;
+    private final ProductService productService;
+    private final StockMovementService stockMovementService;
+    private final LowStockNotificationService lowStockNotificationService;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+    private final Validator validator;
+
+    @Value("${ims.products.bulk.chunk-size:500}")
+    private int chunkSize = 500;
+    @Value("${ims.products.stock-adjustments.max-size:1000}")
+    private int maxAdjustments = 1000;
+
+    // onWrite receives every product change after its chunk is committed, before is null for created products
+    public BulkResultDTO upsertProducts(InputStream body, String username, BiConsumer<Product, Product> onWrite) throws IOException {
+        List<BulkRowResult> results = new ArrayList<>();
+        List<Row> chunk = new ArrayList<>(chunkSize);
+        int notifications = 0;
+        String error = null;
+        try (JsonParser parser = objectMapper.getFactory().createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new IllegalArgumentException("A JSON array of products is expected");
+            }
+            int index = 0;
+            for (JsonToken token = parser.nextToken(); token != JsonToken.END_ARRAY; token = parser.nextToken(), index++) {
+                if (token == null) {
+                    error = "Unexpected end of the product array";
+                    break;
+                }
+                // Each row is read as a tree first so a row that does not map to a product only fails that row
+                JsonNode node = parser.readValueAsTree();
+                ProductDTO product;
+                try {
+                    product = objectMapper.treeToValue(node, ProductDTO.class);
+                } catch (JsonProcessingException e) {
+                    results.add(new BulkRowResult(index, null, BulkRowStatus.INVALID, e.getOriginalMessage()));
+                    continue;
+                }
+                String violations = violations(product);
+                if (violations != null) {
+                    results.add(new BulkRowResult(index, product.id(), BulkRowStatus.INVALID, violations));
+                    continue;
+                }
+                chunk.add(new Row(index, product));
+                if (chunk.size() == chunkSize) {
+                    notifications += applyChunk(chunk, username, onWrite, results);
+                    chunk.clear();
+                }
+            }
+        } catch (JsonProcessingException e) {
+            error = "Malformed JSON: " + e.getOriginalMessage();
+        }
+        if (!chunk.isEmpty()) {
+            notifications += applyChunk(chunk, username, onWrite, results);
+        }
+        if (error == null && results.stream().anyMatch(result -> result.status() == BulkRowStatus.FAILED)) {
+            error = "Some chunks could not be applied, their rows were not changed";
+        }
+        return summary(results, notifications, error);
+    }
+
+    /**
+     * Applies a batch of stock deltas in one transaction. The deltas of each product are added up and applied with a
+     * single UPDATE that does not read the product first, products are updated in id order so concurrent batches lock
+     * rows in the same order. Every entry still gets its own stock movement, all inserted as one JDBC batch. The
+     * entries of a product that does not exist or would end below zero stock are rejected, the others are applied.
+     */
+    public BulkResultDTO adjustStock(List<StockAdjustmentDTO> adjustments, String username, BiConsumer<Product, Product> onWrite) {
+        if (adjustments == null || adjustments.isEmpty() || adjustments.size() > maxAdjustments) {
+            throw new IllegalArgumentException("Between 1 and " + maxAdjustments + " stock adjustments are accepted");
+        }
+        List<BulkRowResult> results = new ArrayList<>(adjustments.size());
+        Map<UUID, List<Integer>> entriesByProduct = new TreeMap<>();
+        for (int index = 0; index < adjustments.size(); index++) {
+            StockAdjustmentDTO adjustment = adjustments.get(index);
+            String violations = adjustment == null ? "Stock adjustment cannot be null" : violations(adjustment);
+            if (violations != null) {
+                results.add(new BulkRowResult(index, adjustment != null ? adjustment.productId() : null, BulkRowStatus.INVALID, violations));
+                continue;
+            }
+            entriesByProduct.computeIfAbsent(adjustment.productId(), id -> new ArrayList<>()).add(index);
+        }
+        List<ProductService.ProductWrite> writes = new ArrayList<>(entriesByProduct.size());
+        int notifications = transactionTemplate.execute(status -> {
+            List<StockMovement> stockMovements = new ArrayList<>(adjustments.size());
+            int notified = 0;
+            for (Map.Entry<UUID, List<Integer>> entries : entriesByProduct.entrySet()) {
+                int netDelta = entries.getValue().stream().mapToInt(index -> adjustments.get(index).delta()).sum();
+                Optional<Product> updated = productStockRepository.addStock(entries.getKey(), netDelta);
+                if (updated.isEmpty()) {
+                    entries.getValue().forEach(index -> results.add(new BulkRowResult(index, entries.getKey(), BulkRowStatus.REJECTED,
+                            "Product not found or stock would drop below zero")));
+                    continue;
+                }
+                Product after = updated.get();
+                Product before = withStock(after, after.getStock() - netDelta);
+                // Replays the entries from the previous stock so each movement has the quantity of its own entry
+                Product current = before;
+                for (int index : entries.getValue()) {
+                    StockAdjustmentDTO adjustment = adjustments.get(index);
+                    Product next = withStock(after, current.getStock() + adjustment.delta());
+                    StockMovement stockMovement = StockMovementService.calculateStockMovement(current, next, StockMovementAction.UPDATED, username);
+                    if (stockMovement != null) {
+                        stockMovement.setReason(adjustment.reason());
+                        stockMovements.add(stockMovement);
+                    }
+                    current = next;
+                    results.add(new BulkRowResult(index, after.getId(), BulkRowStatus.UPDATED, null));
+                }
+                LowStockNotification notification = lowStockNotificationService.notificationFromProduct(after);
+                if (notification != null) {
+                    lowStockNotificationService.save(notification);
+                    notified++;
+                }
+                writes.add(new ProductService.ProductWrite(before, after));
+            }
+            stockMovementService.saveAll(stockMovements);
+            return notified;
+        });
+        productService.productsWritten(writes);
+        writes.forEach(write -> onWrite.accept(write.before(), write.after()));
+        return summary(results, notifications, null);
+    }
+
+    // Adds the row results to results and returns the number of low stock notifications created. A failed transaction,
+    // e.g. a constraint violation or lost optimistic lock from a concurrent writer, only fails the rows of this chunk
+    private int applyChunk(List<Row> rows, String username, BiConsumer<Product, Product> onWrite, List<BulkRowResult> results) {
+        List<ProductService.ProductWrite> writes = new ArrayList<>(rows.size());
+        List<BulkRowResult> applied = new ArrayList<>(rows.size());
+        int notifications;
+        try {
+            notifications = transactionTemplate.execute(status -> applyRows(rows, username, writes, applied));
+        } catch (RuntimeException e) {
+            log.warn("Bulk product chunk of rows {} to {} failed", rows.getFirst().index(), rows.getLast().index(), e);
+            rows.forEach(row -> results.add(new BulkRowResult(row.index(), row.product().id(), BulkRowStatus.FAILED,
+                    "The chunk of this row could not be applied")));
+            return 0;
+        }
+        results.addAll(applied);
+        productService.productsWritten(writes);
+        writes.forEach(write -> onWrite.accept(write.before(), write.after()));
+        return notifications;
+    }
+
+    private int applyRows(List<Row> rows, String username, List<ProductService.ProductWrite> writes, List<BulkRowResult> applied) {
+        Set<UUID> ids = rows.stream().map(row -> row.product().id()).filter(Objects::nonNull).collect(Collectors.toSet());
+        Map<UUID, Product> existing = productRepository.findAllById(ids).stream()
+                .collect(Collectors.toMap(Product::getId, Function.identity()));
+        int notified = 0;
+        for (Row row : rows) {
+            Product incoming = ProductMapper.INSTANCE.toEntity(row.product());
+            if (incoming.getId() == null) {
+                Product product = productRepository.save(incoming);
+                notified += record(StockMovementService.calculateStockMovement(null, product, StockMovementAction.INSERTED, username), product);
+                writes.add(new ProductService.ProductWrite(null, product));
+                applied.add(new BulkRowResult(row.index(), product.getId(), BulkRowStatus.CREATED, null));
+                continue;
+            }
+            Product current = existing.get(incoming.getId());
+            if (current == null) {
+                applied.add(new BulkRowResult(row.index(), incoming.getId(), BulkRowStatus.NOT_FOUND, "Product not found"));
+                continue;
+            }
+            if (row.product().version() != null && !row.product().version().equals(current.getVersion())) {
+                applied.add(new BulkRowResult(row.index(), current.getId(), BulkRowStatus.REJECTED, "Product changed since the given version"));
+                continue;
+            }
+            // Detached copy of the previous state for the movement and the read models, the managed entity is
+            // updated in place and written by the batched flush at commit
+            Product before = ProductMapper.INSTANCE.toEntity(ProductMapper.INSTANCE.toDto(current));
+            ProductMapper.INSTANCE.updateEntity(row.product(), current);
+            notified += record(StockMovementService.calculateStockMovement(before, current, StockMovementAction.UPDATED, username), current);
+            writes.add(new ProductService.ProductWrite(before, current));
+            applied.add(new BulkRowResult(row.index(), current.getId(), BulkRowStatus.UPDATED, null));
+        }
+        return notified;
+    }
+
+    private String violations(Object row) {
+        Set<ConstraintViolation<Object>> violations = validator.validate(row);
+        if (violations.isEmpty()) {
+            return null;
+        }
+        return violations.stream()
+                .map(violation -> violation.getPropertyPath() + ": " + violation.getMessage())
+                .sorted()
+                .collect(Collectors.joining("; "));
+    }
+
+    private static Product withStock(Product product, int stock) {
+        Product copy = ProductMapper.INSTANCE.toEntity(ProductMapper.INSTANCE.toDto(product));
+        copy.setStock(stock);
+        return copy;
+    }
+
+    private static BulkResultDTO summary(List<BulkRowResult> results, int notifications, String error) {
+        results.sort(Comparator.comparingInt(BulkRowResult::index));
+        int created = 0;
+        int updated = 0;
+        for (BulkRowResult result : results) {
+            if (result.status() == BulkRowStatus.CREATED) {
+                created++;
+            } else if (result.status() == BulkRowStatus.UPDATED) {
+                updated++;
+            }
+        }
+        return new BulkResultDTO(created, updated, results.size() - created - updated, notifications, error, results);
+    }
+
+    // Movement and notification of a row, persisted with the chunk
+    private int record(StockMovement stockMovement, Product product) {
+        if (stockMovement != null) {
+            stockMovementService.save(stockMovement);
+        }
+        LowStockNotification notification = lowStockNotificationService.notificationFromProduct(product);
+        if (notification == null) {
+            return 0;
+        }
+        lowStockNotificationService.save(notification);
+        return 1;
+    }
+
+    private record Row(int index, ProductDTO product) {
+    }
+}
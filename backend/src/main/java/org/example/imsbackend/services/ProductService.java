@@ -1,20 +1,42 @@
 package org.example.imsbackend.services;
 
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.Expression;
+import jakarta.persistence.criteria.Root;
 import lombok.RequiredArgsConstructor;
+import org.example.imsbackend.components.ProductReadCache;
+import org.example.imsbackend.components.ProductSearchCounts;
+import org.example.imsbackend.components.ProductSearchIndex;
+import org.example.imsbackend.components.ProductSuggestions;
+import org.example.imsbackend.dto.CursorPage;
+import org.example.imsbackend.dto.InventoryTotals;
+import org.example.imsbackend.dto.ProductCursor;
+import org.example.imsbackend.dto.ProductDTO;
+import org.example.imsbackend.dto.ProductFacets;
 import org.example.imsbackend.dto.ProductFilter;
+import org.example.imsbackend.dto.ProductNameDTO;
 import org.example.imsbackend.dto.StockMovementFilter;
 import org.example.imsbackend.enums.Category;
+import org.example.imsbackend.enums.ProductScrollSort;
+import org.example.imsbackend.enums.ProductSort;
 import org.example.imsbackend.models.Product;
 import org.example.imsbackend.repositories.ProductRepository;
+import org.example.imsbackend.repositories.ProductSearchRepository;
+import org.hibernate.query.criteria.HibernateCriteriaBuilder;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.validation.annotation.Validated;
 
 import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
+import java.util.function.Function;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.UUID;
 import java.util.stream.Collectors;
@@ -23,9 +45,111 @@ import java.util.stream.Collectors;
 @Validated
 @RequiredArgsConstructor
 public class ProductService {
+    private static final int MAX_SCROLL_SIZE = 100;
+    private static final int MAX_SUGGESTIONS = 20;
+    private static final int MAX_PRICE_BUCKETS = 50;
+    private static final String NAME_COLLATION = "ucs_basic";
+
     private final ProductRepository productRepository;
+    private final ProductSearchCounts productSearchCounts;
+    private final ProductSearchRepository productSearchRepository;
+    private final ProductSearchIndex productSearchIndex;
+    private final ProductSuggestions productSuggestions;
+    private final ProductReadCache productReadCache;
 
+    // Cached per normalized filter, misses are served by the in-memory index when it is enabled and built. Sorted by
+    // a whitelisted key and the id so pages are stable, throws IllegalArgumentException for an invalid sort
     public Page<Product> getAllProducts(ProductFilter filter) {
+        ProductSort sort = ProductSort.valueOf(filter.getSort().toUpperCase());
+        Sort.Direction direction = Sort.Direction.fromString(filter.getDirection());
+        return productReadCache.search(filter, () -> searchProducts(filter, sort, direction));
+    }
+
+    private Page<Product> searchProducts(ProductFilter filter, ProductSort sort, Sort.Direction direction) {
+        Optional<Page<Product>> indexed = productSearchIndex.search(filter, sort, direction.isDescending());
+        if (indexed.isPresent()) {
+            return indexed.get();
+        }
+        if (sort == ProductSort.NAME) {
+            // Ordered by the specification, Sort cannot carry the collation
+            Pageable pageable = PageRequest.of(filter.getPage(), filter.getSize());
+            return productRepository.findAll(filterSpecification(filter).and(orderedByName(direction.isDescending())), pageable);
+        }
+        Pageable pageable = PageRequest.of(filter.getPage(), filter.getSize(), Sort.by(direction, sort.getAttribute(), "id"));
+        return productRepository.findAll(filterSpecification(filter), pageable);
+    }
+
+    // Keyset search on (name, id) or (price, id) without the page count query, the total is only computed on request
+    // and is cached. Throws IllegalArgumentException for an invalid sort, cursor or size
+    public CursorPage<Product> scrollProducts(ProductFilter filter) {
+        ProductScrollSort sort = ProductScrollSort.valueOf(filter.getSort().toUpperCase());
+        int size = filter.getSize();
+        if (size < 1 || size > MAX_SCROLL_SIZE) {
+            throw new IllegalArgumentException("size must be between 1 and " + MAX_SCROLL_SIZE);
+        }
+        Specification<Product> spec = filterSpecification(filter);
+        if (filter.getCursor() != null && !filter.getCursor().isBlank()) {
+            ProductCursor cursor = ProductCursor.decode(filter.getCursor());
+            if (cursor.sort() != sort) {
+                throw new IllegalArgumentException("The cursor was created for a different sort");
+            }
+            spec = spec.and(after(sort, cursor));
+        }
+        if (sort == ProductScrollSort.NAME) {
+            spec = spec.and(orderedByName(false));
+        }
+        Sort order = sort == ProductScrollSort.NAME ? Sort.unsorted() : Sort.by(sort.getAttribute(), "id");
+        // One extra row tells whether there is a next page without counting
+        List<Product> rows = productRepository.findBy(spec, query -> query
+                .sortBy(order)
+                .limit(size + 1)
+                .all());
+        Long total = filter.isWithTotal()
+                ? productSearchCounts.count(filter, () -> productRepository.count(filterSpecification(filter)))
+                : null;
+        if (rows.size() <= size) {
+            return new CursorPage<>(rows, size, false, null, total);
+        }
+        List<Product> content = rows.subList(0, size);
+        Product last = content.getLast();
+        String key = sort == ProductScrollSort.NAME ? last.getName() : String.valueOf(last.getPrice());
+        return new CursorPage<>(content, size, true, new ProductCursor(sort, key, last.getId()).encode(), total);
+    }
+
+    // Best matches of the name filter in name and description, most relevant first. Throws IllegalArgumentException
+    // without a search term or for an invalid size
+    public List<Product> searchProductsByRelevance(ProductFilter filter) {
+        if (filter.getName() == null || filter.getName().isBlank()) {
+            throw new IllegalArgumentException("A search term is required");
+        }
+        int size = filter.getSize();
+        if (size < 1 || size > MAX_SCROLL_SIZE) {
+            throw new IllegalArgumentException("size must be between 1 and " + MAX_SCROLL_SIZE);
+        }
+        List<UUID> ids = productSearchRepository.searchIds(filter, size);
+        Map<UUID, Product> products = productRepository.findAllById(ids).stream()
+                .collect(Collectors.toMap(Product::getId, Function.identity()));
+        return ids.stream().map(products::get).filter(Objects::nonNull).toList();
+    }
+
+    // Category and price facets of a search, computed with a single grouped query
+    public ProductFacets productFacets(ProductFilter filter) {
+        int buckets = filter.getPriceBuckets() != null ? filter.getPriceBuckets() : 10;
+        if (buckets < 1 || buckets > MAX_PRICE_BUCKETS) {
+            throw new IllegalArgumentException("priceBuckets must be between 1 and " + MAX_PRICE_BUCKETS);
+        }
+        return productSearchRepository.facets(filter, buckets);
+    }
+
+    // Typeahead over the words of product names, answered from memory
+    public List<ProductNameDTO> suggestProductNames(String query, int limit) {
+        if (query == null || limit < 1 || limit > MAX_SUGGESTIONS) {
+            throw new IllegalArgumentException("A query and a limit between 1 and " + MAX_SUGGESTIONS + " are required");
+        }
+        return productSuggestions.suggest(query, limit);
+    }
+
+    private Specification<Product> filterSpecification(ProductFilter filter) {
         Specification<Product> spec = Specification.where(null);
 
         if (filter.getName() != null && !filter.getName().isEmpty()) {
@@ -44,44 +168,93 @@ public class ProductService {
         if (filter.getMaxPrice() != null) {
             spec = spec.and((root, query, cb) -> cb.lessThanOrEqualTo(root.get("price"), filter.getMaxPrice()));
         }
+        return spec;
+    }
 
-        Pageable pageable = PageRequest.of(filter.getPage(), filter.getSize());
-        return productRepository.findAll(spec, pageable);
+    // Rows after the cursor in (key, id) order: key > cursor key, or same key and id > cursor id
+    private static Specification<Product> after(ProductScrollSort sort, ProductCursor cursor) {
+        return (root, query, cb) -> {
+            if (sort == ProductScrollSort.NAME) {
+                Expression<String> name = collatedName(root, cb);
+                return cb.or(cb.greaterThan(name, cursor.key()),
+                        cb.and(cb.equal(name, cursor.key()), cb.greaterThan(root.get("id"), cursor.id())));
+            }
+            Double price = Double.valueOf(cursor.key());
+            return cb.or(cb.greaterThan(root.get("price"), price),
+                    cb.and(cb.equal(root.get("price"), price), cb.greaterThan(root.get("id"), cursor.id())));
+        };
+    }
+
+    // Changes after every product write, read it before the data it describes
+    public String catalogueVersion() {
+        return productReadCache.catalogueVersion();
     }
 
+    // Always read from the database, the write paths compute stock movements from it
     public Optional<Product> getProductById(UUID id) {
         return productRepository.findById(id);
     }
 
-    public Product saveProduct(Product product) {
-        return productRepository.save(product);
+    // Cached read for the public details endpoint
+    public Optional<Product> getProductDetails(UUID id) {
+        return productReadCache.product(id, productRepository::findById);
     }
 
-    public void deleteProduct(UUID id) {
-        productRepository.deleteById(id);
+    // before is the stored state the caller already read, null on create. It tells which cached searches the product
+    // may drop out of
+    public Product saveProduct(Product before, Product product) {
+        Product savedProduct = productRepository.save(product);
+        productSearchCounts.invalidateAll();
+        productSuggestions.productSaved(savedProduct);
+        productReadCache.productWritten(savedProduct.getId(), before, savedProduct);
+        return savedProduct;
+    }
+
+    // Read model upkeep for product writes committed outside saveProduct, such as a bulk upsert chunk
+    public void productsWritten(List<ProductWrite> writes) {
+        if (writes.isEmpty()) {
+            return;
+        }
+        productSearchCounts.invalidateAll();
+        for (ProductWrite write : writes) {
+            productSuggestions.productSaved(write.after());
+            productReadCache.productWritten(write.after().getId(), write.before(), write.after());
+        }
+    }
+
+    // product is the stored state the caller already read
+    public void deleteProduct(Product product) {
+        productRepository.deleteById(product.getId());
+        productSearchCounts.invalidateAll();
+        productSuggestions.productDeleted(product.getId());
+        productReadCache.productWritten(product.getId(), product, null);
     }
 
     public void deleteAllProducts() {
         productRepository.deleteAll();
+        productSearchCounts.invalidateAll();
+        productSuggestions.clear();
+        productReadCache.invalidateAll();
     }
 
     public long countProducts() {
         return productRepository.count();
     }
 
+    public InventoryTotals inventoryTotals() {
+        return productRepository.inventoryTotals();
+    }
+
     public long totalStock() {
-        return productRepository.findAll().stream()
-                .mapToLong(Product::getStock)
-                .sum();
+        return productRepository.inventoryTotals().getTotalStock();
     }
 
     public double totalInventoryValue() {
-        return productRepository.findAll().stream()
-                .mapToDouble(product -> product.getPrice() * product.getStock())
-                .sum();
+        return productRepository.inventoryTotals().getTotalValue();
     }
 
-    public Page<Product> productsBelowMinimumStock(StockMovementFilter filter) {
+    @Transactional(readOnly = true)
+    public Page<ProductDTO> productsBelowMinimumStock(StockMovementFilter filter) {
         Pageable pageable = PageRequest.of(filter.getPage(), filter.getSize());
         return productRepository.findProductsBelowMinimumStock(pageable);
     }
@@ -94,6 +267,23 @@ public class ProductService {
                 ));
     }
 
+    // before is null when the product was created
+    public record ProductWrite(Product before, Product after) {
+    }
 
+    // Orders by (name, id) with the name in code point order, the order of ProductSort and of the in-memory index
+    // whatever the collation of the database. Only sets the order, the count query drops it
+    private static Specification<Product> orderedByName(boolean descending) {
+        return (root, query, cb) -> {
+            Expression<String> name = collatedName(root, cb);
+            query.orderBy(descending ? cb.desc(name) : cb.asc(name),
+                    descending ? cb.desc(root.get("id")) : cb.asc(root.get("id")));
+            return null;
+        };
+    }
 
+    // ucs_basic compares code points and is backed by the (name COLLATE ucs_basic, id) index
+    private static Expression<String> collatedName(Root<Product> root, CriteriaBuilder cb) {
+        return ((HibernateCriteriaBuilder) cb).collate(root.get("name"), NAME_COLLATION);
+    }
 }
@@ -0,0 +1,133 @@
+package org.example.imsbackend.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.example.imsbackend.dto.ProductDTO;
+import org.example.imsbackend.enums.StockMovementAction;
+import org.example.imsbackend.mappers.ProductMapper;
+import org.example.imsbackend.models.LowStockNotification;
+import org.example.imsbackend.models.Product;
+import org.example.imsbackend.models.StockMovement;
+import org.example.imsbackend.repositories.ProductRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+
+/**
+ * Product updates as one transaction: the product is read, changed, its stock movement and low stock notification are
+ * saved and the change is flushed against the version read at the start. A full product sent by a client is only
+ * applied to the version the client read and is never retried, a concurrent write makes it fail with an
+ * {@link OptimisticLockingFailureException}. Server side changes such as stock deltas are retried from a fresh read
+ * after a random backoff that doubles up to a cap, when the attempts run out the exception reaches the caller.
+ */
+@Service
+@RequiredArgsConstructor
+public class ProductUpdateService {
+    private final ProductRepository productRepository;
+    private final ProductService productService;
+    private final StockMovementService stockMovementService;
+    private final LowStockNotificationService lowStockNotificationService;
+    private final TransactionTemplate transactionTemplate;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${ims.products.update.max-attempts:5}")
+    private int maxAttempts = 5;
+    @Value("${ims.products.update.backoff-ms:5}")
+    private long backoffMs = 5;
+    @Value("${ims.products.update.max-backoff-ms:100}")
+    private long maxBackoffMs = 100;
+
+    private Counter retries;
+    private Counter conflicts;
+
+    @PostConstruct
+    void registerMetrics() {
+        retries = Counter.builder("ims.products.update.retries").register(meterRegistry);
+        conflicts = Counter.builder("ims.products.update.conflicts").register(meterRegistry);
+    }
+
+    // Replaces the product with the client's copy, refused when the product changed since the client read its version.
+    // Without a version the copy is applied to the current state, a write between the read and the flush still fails
+    public Optional<UpdatedProduct> updateProduct(UUID id, ProductDTO product, String username) {
+        try {
+            return execute(id, current -> {
+                if (product.version() != null && !product.version().equals(current.getVersion())) {
+                    throw new ObjectOptimisticLockingFailureException(Product.class, id);
+                }
+                ProductMapper.INSTANCE.updateEntity(product, current);
+            }, username);
+        } catch (OptimisticLockingFailureException e) {
+            conflicts.increment();
+            throw e;
+        }
+    }
+
+    // change is applied again on every attempt, always to the latest committed state of the product
+    public Optional<UpdatedProduct> update(UUID id, Consumer<Product> change, String username) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return execute(id, change, username);
+            } catch (OptimisticLockingFailureException e) {
+                if (attempt >= maxAttempts) {
+                    conflicts.increment();
+                    throw e;
+                }
+                retries.increment();
+                backoff(attempt);
+            }
+        }
+    }
+
+    private Optional<UpdatedProduct> execute(UUID id, Consumer<Product> change, String username) {
+        Optional<UpdatedProduct> updated = transactionTemplate.execute(status -> apply(id, change, username));
+        updated.ifPresent(result -> productService.productsWritten(
+                List.of(new ProductService.ProductWrite(result.before(), result.after()))));
+        return updated;
+    }
+
+    private Optional<UpdatedProduct> apply(UUID id, Consumer<Product> change, String username) {
+        Optional<Product> found = productRepository.findById(id);
+        if (found.isEmpty()) {
+            return Optional.empty();
+        }
+        Product current = found.get();
+        Product before = ProductMapper.INSTANCE.toEntity(ProductMapper.INSTANCE.toDto(current));
+        change.accept(current);
+        // Flushed here so a version conflict fails this attempt before the movement is counted as recorded
+        Product after = productRepository.saveAndFlush(current);
+        StockMovement stockMovement = StockMovementService.calculateStockMovement(before, after, StockMovementAction.UPDATED, username);
+        if (stockMovement != null) {
+            stockMovementService.save(stockMovement);
+        }
+        LowStockNotification notification = lowStockNotificationService.notificationFromProduct(after);
+        if (notification != null) {
+            lowStockNotificationService.save(notification);
+        }
+        return Optional.of(new UpdatedProduct(before, after, notification != null));
+    }
+
+    // Full jitter, a random wait up to the exponential bound keeps retrying writers from colliding again
+    private void backoff(int attempt) {
+        long bound = Math.min(maxBackoffMs, backoffMs << Math.min(attempt - 1, 20));
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(bound + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while retrying a product update", e);
+        }
+    }
+
+    // before is a detached copy of the product read by the successful attempt
+    public record UpdatedProduct(Product before, Product after, boolean lowStockNotified) {
+    }
+}
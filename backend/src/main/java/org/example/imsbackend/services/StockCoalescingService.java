@@ -0,0 +1,543 @@
+package org.example.imsbackend.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.example.imsbackend.enums.BulkRowStatus;
+import org.example.imsbackend.enums.StockAckMode;
+import org.example.imsbackend.enums.StockMovementAction;
+import org.example.imsbackend.mappers.ProductMapper;
+import org.example.imsbackend.models.LowStockNotification;
+import org.example.imsbackend.models.Product;
+import org.example.imsbackend.models.StockMovement;
+import org.example.imsbackend.repositories.ProductStockRepository;
+import org.example.imsbackend.repositories.StockMovementBatchRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Opt-in write path for hot products. Stock deltas are queued in memory, in stripes chosen by product id so writers
+ * of different products do not contend, and a single flusher applies the net delta of every product once per flush
+ * interval with the atomic UPDATE of {@link ProductStockRepository}. Each delta still gets its own stock movement, the
+ * movements of a flush are inserted as one JDBC batch. With {@link StockAckMode#AFTER_FLUSH} a delta is acknowledged
+ * when its flush commits. With {@link StockAckMode#AFTER_APPEND} it is acknowledged once it is forced to a local
+ * journal, and the deltas found in the journal at startup that have no stock movement yet are queued again. Their
+ * failed flushes are retried per product after a backoff that doubles with each failure, a product that failed
+ * isolate-after-attempts times is flushed in its own transaction and its deltas are dead-lettered after max-attempts.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class StockCoalescingService {
+    private static final int REPLAY_LOOKUP_SIZE = 1000;
+
+    private final ProductStockRepository productStockRepository;
+    private final StockMovementBatchRepository stockMovementBatchRepository;
+    private final ProductService productService;
+    private final StockMovementService stockMovementService;
+    private final LowStockNotificationService lowStockNotificationService;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${ims.products.stock-coalescing.enabled:false}")
+    private boolean enabled;
+    @Value("${ims.products.stock-coalescing.flush-interval-ms:5}")
+    private long flushIntervalMs = 5;
+    @Value("${ims.products.stock-coalescing.stripes:64}")
+    private int stripeCount = 64;
+    @Value("${ims.products.stock-coalescing.ack:AFTER_FLUSH}")
+    private StockAckMode ackMode = StockAckMode.AFTER_FLUSH;
+    @Value("${ims.products.stock-coalescing.journal-dir:data/stock-deltas}")
+    private String journalDir;
+    @Value("${ims.products.stock-coalescing.retry-backoff-ms:100}")
+    private long retryBackoffMs = 100;
+    @Value("${ims.products.stock-coalescing.max-retry-backoff-ms:30000}")
+    private long maxRetryBackoffMs = 30_000;
+    @Value("${ims.products.stock-coalescing.isolate-after-attempts:2}")
+    private int isolateAfterAttempts = 2;
+    @Value("${ims.products.stock-coalescing.max-attempts:8}")
+    private int maxAttempts = 8;
+
+    private Stripe[] stripes;
+    private StockDeltaJournal journal;
+    // Appends and rotations are serialized so a rotated file holds exactly the deltas taken by its flush
+    private final Object journalLock = new Object();
+    // Products whose deltas failed to flush, keyed by product id
+    private final Map<UUID, Deferred> deferred = new HashMap<>();
+    private ScheduledExecutorService flusher;
+    private volatile boolean running;
+    private volatile FlushListener listener = (writes, lowStockNotifications) -> { };
+
+    private Counter deltas;
+    private Counter rejected;
+    private Counter deadLettered;
+    private DistributionSummary coalescing;
+
+    // Receives the product writes of every committed flush, used for the read models kept by the controller
+    public void setListener(FlushListener listener) {
+        this.listener = listener;
+    }
+
+    public boolean isEnabled() {
+        return running;
+    }
+
+    public StockAckMode ackMode() {
+        return ackMode;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        deltas = Counter.builder("ims.products.stock-coalescing.deltas").register(meterRegistry);
+        rejected = Counter.builder("ims.products.stock-coalescing.rejected").register(meterRegistry);
+        deadLettered = Counter.builder("ims.products.stock-coalescing.dead-lettered").register(meterRegistry);
+        coalescing = DistributionSummary.builder("ims.products.stock-coalescing.deltas.per.flush")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+        stripes = new Stripe[Integer.highestOneBit(Math.max(1, stripeCount))];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new Stripe();
+        }
+        if (ackMode == StockAckMode.AFTER_APPEND) {
+            journal = StockDeltaJournal.open(Path.of(journalDir), objectMapper);
+            replay();
+        }
+        flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "stock-delta-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+        running = true;
+    }
+
+    @PreDestroy
+    void stop() throws Exception {
+        if (!running) {
+            return;
+        }
+        running = false;
+        flusher.shutdown();
+        flusher.awaitTermination(10, TimeUnit.SECONDS);
+        flush();
+        if (journal != null) {
+            journal.close();
+        }
+    }
+
+    /**
+     * Queues a stock delta. The future completes with UPDATED or REJECTED after its flush, or with ACCEPTED as soon
+     * as the delta is in the journal when acknowledging after append. A zero delta is refused since it records no
+     * stock movement.
+     */
+    public CompletableFuture<BulkRowStatus> submit(UUID productId, int delta, String reason, String username) {
+        if (!running) {
+            throw new IllegalStateException("Stock coalescing is not enabled");
+        }
+        if (delta == 0) {
+            throw new IllegalArgumentException("Delta cannot be zero");
+        }
+        Pending pending = new Pending(new StockDeltaJournal.Entry(UUID.randomUUID(), productId, delta, reason, username,
+                LocalDateTime.now()), new CompletableFuture<>());
+        deltas.increment();
+        if (journal == null) {
+            stripeFor(productId).add(pending);
+            return pending.done();
+        }
+        try {
+            long position;
+            synchronized (journalLock) {
+                position = journal.append(pending.entry());
+                stripeFor(productId).add(pending);
+            }
+            journal.sync(position);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not append the stock delta to the journal", e);
+        }
+        return CompletableFuture.completedFuture(BulkRowStatus.ACCEPTED);
+    }
+
+    // Applies every queued delta, runs on the flusher thread and once more on shutdown
+    void flush() {
+        List<Pending> batch;
+        Path rotated = null;
+        try {
+            if (journal != null) {
+                long position = 0;
+                synchronized (journalLock) {
+                    batch = due(drain());
+                    if (!batch.isEmpty()) {
+                        rotated = journal.rotate();
+                        // Deltas still waiting for their retry were in the rotated file, it is deleted after this flush
+                        for (Deferred waiting : deferred.values()) {
+                            for (Pending pending : waiting.pending()) {
+                                position = journal.append(pending.entry());
+                            }
+                        }
+                    }
+                }
+                journal.sync(position);
+            } else {
+                batch = drain();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not rotate the stock delta journal", e);
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        coalescing.record(batch.size());
+        // Products are updated in id order so the row locks are always taken in the same order. A product with deltas
+        // that already failed several times is applied in its own transaction so it cannot fail the other products
+        Map<UUID, List<Pending>> byProduct = new TreeMap<>();
+        batch.forEach(pending -> byProduct.computeIfAbsent(pending.entry().productId(), id -> new ArrayList<>()).add(pending));
+        List<Map<UUID, List<Pending>>> transactions = new ArrayList<>();
+        Map<UUID, List<Pending>> combined = new TreeMap<>();
+        byProduct.forEach((productId, pending) -> {
+            if (pending.stream().anyMatch(p -> p.failures() >= isolateAfterAttempts)) {
+                transactions.add(Map.of(productId, pending));
+            } else {
+                combined.put(productId, pending);
+            }
+        });
+        if (!combined.isEmpty()) {
+            transactions.addFirst(combined);
+        }
+        Map<Pending, BulkRowStatus> statuses = new HashMap<>();
+        List<ProductService.ProductWrite> writes = new ArrayList<>();
+        int lowStockNotifications = 0;
+        List<Pending> retried = new ArrayList<>();
+        for (Map<UUID, List<Pending>> products : transactions) {
+            Flush result;
+            try {
+                result = transactionTemplate.execute(status -> apply(products));
+            } catch (RuntimeException e) {
+                failed(products, e, retried);
+                continue;
+            }
+            statuses.putAll(result.statuses());
+            writes.addAll(result.writes());
+            lowStockNotifications += result.lowStockNotifications();
+        }
+        if (rejournal(retried)) {
+            deleteQuietly(rotated);
+        }
+        statuses.forEach((pending, status) -> pending.done().complete(status));
+        statuses.forEach((pending, status) -> {
+            if (status == BulkRowStatus.REJECTED) {
+                rejected.increment();
+                if (journal != null) {
+                    log.warn("Dropped stock delta {} of product {}, the product is missing or the stock would drop below zero",
+                            pending.entry().delta(), pending.entry().productId());
+                }
+            }
+        });
+        if (!writes.isEmpty()) {
+            productService.productsWritten(writes);
+            listener.flushed(writes, lowStockNotifications);
+        }
+    }
+
+    private Flush apply(Map<UUID, List<Pending>> byProduct) {
+        Map<Pending, BulkRowStatus> statuses = new HashMap<>();
+        List<ProductService.ProductWrite> writes = new ArrayList<>(byProduct.size());
+        List<StockMovement> stockMovements = new ArrayList<>();
+        int notifications = 0;
+        for (Map.Entry<UUID, List<Pending>> product : byProduct.entrySet()) {
+            List<Pending> applied = product.getValue();
+            long netDelta = net(applied);
+            // A net delta beyond the int range is applied delta by delta, as one that does not fit
+            Optional<Product> updated = netDelta == (int) netDelta
+                    ? productStockRepository.addStock(product.getKey(), (int) netDelta)
+                    : Optional.empty();
+            if (updated.isEmpty()) {
+                // The net delta does not fit, apply the deltas one by one so only the ones that do not fit are rejected
+                applied = new ArrayList<>();
+                for (Pending pending : product.getValue()) {
+                    Optional<Product> single = productStockRepository.addStock(product.getKey(), pending.entry().delta());
+                    if (single.isPresent()) {
+                        applied.add(pending);
+                        updated = single;
+                    } else {
+                        statuses.put(pending, BulkRowStatus.REJECTED);
+                    }
+                }
+                if (applied.isEmpty()) {
+                    continue;
+                }
+            }
+            Product after = updated.get();
+            Product before = withStock(after, (int) (after.getStock() - net(applied)));
+            Product current = before;
+            for (Pending pending : applied) {
+                Product next = withStock(after, current.getStock() + pending.entry().delta());
+                StockMovement stockMovement = StockMovementService.calculateStockMovement(current, next,
+                        StockMovementAction.UPDATED, pending.entry().username());
+                stockMovement.setId(pending.entry().id());
+                stockMovement.setDate(pending.entry().date());
+                stockMovement.setReason(pending.entry().reason());
+                stockMovements.add(stockMovement);
+                statuses.put(pending, BulkRowStatus.UPDATED);
+                current = next;
+            }
+            LowStockNotification notification = lowStockNotificationService.notificationFromProduct(after);
+            if (notification != null) {
+                lowStockNotificationService.save(notification);
+                notifications++;
+            }
+            writes.add(new ProductService.ProductWrite(before, after));
+        }
+        stockMovementService.saveAll(stockMovements);
+        return new Flush(statuses, writes, notifications);
+    }
+
+    // Without a journal the requests fail. Acknowledged deltas are retried after a backoff that doubles with every
+    // failure of their product, and dead-lettered once they failed max-attempts times
+    private void failed(Map<UUID, List<Pending>> byProduct, RuntimeException e, List<Pending> retried) {
+        int count = byProduct.values().stream().mapToInt(List::size).sum();
+        if (journal == null) {
+            log.warn("Stock delta flush of {} deltas failed", count, e);
+            byProduct.values().forEach(pending -> pending.forEach(p -> p.done().completeExceptionally(e)));
+            return;
+        }
+        int attempt = 0;
+        for (Map.Entry<UUID, List<Pending>> product : byProduct.entrySet()) {
+            List<Pending> again = product.getValue().stream().map(Pending::failedOnce).toList();
+            int failures = again.stream().mapToInt(Pending::failures).max().orElse(0);
+            attempt = Math.max(attempt, failures);
+            if (failures >= maxAttempts) {
+                deadLetter(product.getKey(), again, e);
+                continue;
+            }
+            retried.addAll(again);
+            synchronized (journalLock) {
+                Deferred waiting = deferred.computeIfAbsent(product.getKey(), id -> new Deferred(new ArrayList<>()));
+                waiting.pending().addAll(0, again);
+                waiting.retryAt(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(backoffMs(failures)));
+            }
+        }
+        // The stack trace is logged on the first failure only, a failure that keeps coming back is logged briefly
+        if (attempt <= 1) {
+            log.warn("Stock delta flush of {} deltas of {} products failed, they are retried after a backoff",
+                    count, byProduct.size(), e);
+        } else {
+            log.warn("Stock delta flush of {} deltas of {} products failed again, attempt {}: {}",
+                    count, byProduct.size(), attempt, e.toString());
+        }
+    }
+
+    // Journals the deltas that wait for a retry in the current file, false when they are only left in the rotated one
+    private boolean rejournal(List<Pending> retried) {
+        if (journal == null || retried.isEmpty()) {
+            return true;
+        }
+        try {
+            long position = 0;
+            synchronized (journalLock) {
+                for (Pending pending : retried) {
+                    position = journal.append(pending.entry());
+                }
+            }
+            journal.sync(position);
+            return true;
+        } catch (IOException journalError) {
+            // The rotated file is kept, the deltas are replayed from it on the next start
+            log.error("Could not journal the stock deltas of a failed flush again", journalError);
+            return false;
+        }
+    }
+
+    // Deltas of the retry queue that are due, together with the deltas of their product queued since
+    private List<Pending> due(List<Pending> drained) {
+        List<Pending> batch = new ArrayList<>(drained.size());
+        for (Pending pending : drained) {
+            Deferred waiting = deferred.get(pending.entry().productId());
+            if (waiting != null) {
+                // Kept behind the deltas of the same product that wait for their retry, in arrival order
+                waiting.pending().add(pending);
+            } else {
+                batch.add(pending);
+            }
+        }
+        long now = System.nanoTime();
+        deferred.values().removeIf(waiting -> {
+            if (waiting.retryAt() - now > 0) {
+                return false;
+            }
+            batch.addAll(waiting.pending());
+            return true;
+        });
+        return batch;
+    }
+
+    // Logged once with the failure, the deltas are kept in the dead letter file of the journal for a manual replay
+    private void deadLetter(UUID productId, List<Pending> pending, RuntimeException e) {
+        deadLettered.increment(pending.size());
+        log.error("Dead-lettered {} stock deltas of product {} after {} failed flushes", pending.size(), productId, maxAttempts, e);
+        try {
+            journal.deadLetter(pending.stream().map(Pending::entry).toList());
+        } catch (IOException journalError) {
+            log.error("Could not write the dead-lettered stock deltas of product {}: {}", productId,
+                    pending.stream().map(Pending::entry).toList(), journalError);
+        }
+        pending.forEach(p -> p.done().completeExceptionally(e));
+    }
+
+    private long backoffMs(int failures) {
+        return Math.min(maxRetryBackoffMs, retryBackoffMs << Math.min(failures - 1, 20));
+    }
+
+    // Queues the journaled deltas of a previous run whose stock movement was never stored
+    private void replay() throws IOException {
+        List<Path> files = journal.previousFiles();
+        Map<UUID, StockDeltaJournal.Entry> entries = new LinkedHashMap<>();
+        for (Path file : files) {
+            journal.read(file).forEach(entry -> entries.putIfAbsent(entry.id(), entry));
+        }
+        List<UUID> ids = new ArrayList<>(entries.keySet());
+        for (int from = 0; from < ids.size(); from += REPLAY_LOOKUP_SIZE) {
+            Set<UUID> stored = stockMovementBatchRepository.existingIds(ids.subList(from, Math.min(ids.size(), from + REPLAY_LOOKUP_SIZE)));
+            stored.forEach(entries::remove);
+        }
+        long position = 0;
+        for (StockDeltaJournal.Entry entry : entries.values()) {
+            position = journal.append(entry);
+            stripeFor(entry.productId()).add(new Pending(entry, new CompletableFuture<>()));
+        }
+        journal.sync(position);
+        for (Path file : files) {
+            journal.delete(file);
+        }
+        if (!entries.isEmpty()) {
+            log.info("Replayed {} stock deltas from the journal", entries.size());
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.error("Stock delta flush failed", e);
+        }
+    }
+
+    private List<Pending> drain() {
+        List<Pending> batch = new ArrayList<>();
+        for (Stripe stripe : stripes) {
+            stripe.drainTo(batch);
+        }
+        return batch;
+    }
+
+    private Stripe stripeFor(UUID productId) {
+        int hash = productId.hashCode();
+        return stripes[(hash ^ (hash >>> 16)) & (stripes.length - 1)];
+    }
+
+    private void deleteQuietly(Path file) {
+        if (file == null) {
+            return;
+        }
+        try {
+            journal.delete(file);
+        } catch (IOException e) {
+            log.warn("Could not delete flushed journal file {}, its deltas are skipped on replay", file, e);
+        }
+    }
+
+    private static long net(List<Pending> pending) {
+        return pending.stream().mapToLong(p -> p.entry().delta()).sum();
+    }
+
+    private static Product withStock(Product product, int stock) {
+        Product copy = ProductMapper.INSTANCE.toEntity(ProductMapper.INSTANCE.toDto(product));
+        copy.setStock(stock);
+        return copy;
+    }
+
+    public interface FlushListener {
+        void flushed(List<ProductService.ProductWrite> writes, int lowStockNotifications);
+    }
+
+    // failures counts the failed flushes of the delta, it only grows when acknowledging after append
+    private record Pending(StockDeltaJournal.Entry entry, CompletableFuture<BulkRowStatus> done, int failures) {
+        Pending(StockDeltaJournal.Entry entry, CompletableFuture<BulkRowStatus> done) {
+            this(entry, done, 0);
+        }
+
+        Pending failedOnce() {
+            return new Pending(entry, done, failures + 1);
+        }
+    }
+
+    // Deltas of a product waiting for their retry, guarded by the journal lock
+    private static final class Deferred {
+        private final List<Pending> pending;
+        private long retryAt;
+
+        Deferred(List<Pending> pending) {
+            this.pending = pending;
+        }
+
+        List<Pending> pending() {
+            return pending;
+        }
+
+        long retryAt() {
+            return retryAt;
+        }
+
+        void retryAt(long retryAt) {
+            this.retryAt = retryAt;
+        }
+    }
+
+    private record Flush(Map<Pending, BulkRowStatus> statuses, List<ProductService.ProductWrite> writes,
+                         int lowStockNotifications) {
+    }
+
+    // Deltas queued since the last flush for the products of one stripe, in arrival order
+    private static class Stripe {
+        private List<Pending> pending = new ArrayList<>();
+
+        synchronized void add(Pending delta) {
+            pending.add(delta);
+        }
+
+        synchronized void drainTo(List<Pending> batch) {
+            if (!pending.isEmpty()) {
+                batch.addAll(pending);
+                pending = new ArrayList<>();
+            }
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package org.example.imsbackend.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * Append-only local file of accepted stock deltas, one JSON object per line. Appends are only durable after
+ * {@link #sync}, concurrent callers share one fsync: a sync returns at once when another one already covered its
+ * position. Positions count bytes over the whole life of the journal so they stay ordered across rotations. The
+ * current file is rotated when its deltas are taken by a flush and the rotated file is deleted once they are stored.
+ * Deltas that keep failing to flush are moved to a dead letter file, which is never replayed.
+ */
+class StockDeltaJournal implements AutoCloseable {
+    private static final String SUFFIX = ".journal";
+    private static final String DEAD_LETTERS = "dead-letters.jsonl";
+
+    private final Path directory;
+    private final ObjectMapper objectMapper;
+    private final Object syncLock = new Object();
+
+    private FileChannel channel;
+    private Path current;
+    private long written;
+    private long synced;
+    private long sequence;
+
+    private StockDeltaJournal(Path directory, ObjectMapper objectMapper) {
+        this.directory = directory;
+        this.objectMapper = objectMapper;
+    }
+
+    // Opens a new current file, files left by a previous run are listed by previousFiles() and removed with delete()
+    static StockDeltaJournal open(Path directory, ObjectMapper objectMapper) throws IOException {
+        Files.createDirectories(directory);
+        StockDeltaJournal journal = new StockDeltaJournal(directory, objectMapper);
+        journal.sequence = System.currentTimeMillis();
+        journal.openCurrent();
+        return journal;
+    }
+
+    // Files other than the current one, oldest first
+    List<Path> previousFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(SUFFIX) && !file.equals(current))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    List<Entry> read(Path file) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                try {
+                    entries.add(objectMapper.readValue(line, Entry.class));
+                } catch (IOException e) {
+                    break; // Torn last line of a crash, it was never acknowledged
+                }
+            }
+        }
+        return entries;
+    }
+
+    // Returns the position to pass to sync(), callers serialize appends with rotations
+    synchronized long append(Entry entry) throws IOException {
+        ByteBuffer line = ByteBuffer.wrap((objectMapper.writeValueAsString(entry) + "\n").getBytes(StandardCharsets.UTF_8));
+        while (line.hasRemaining()) {
+            written += channel.write(line);
+        }
+        return written;
+    }
+
+    void sync(long position) throws IOException {
+        synchronized (syncLock) {
+            if (synced >= position) {
+                return;
+            }
+            long target;
+            FileChannel toForce;
+            synchronized (this) {
+                target = written;
+                toForce = channel;
+            }
+            toForce.force(false);
+            synced = Math.max(synced, target);
+        }
+    }
+
+    // Closes the current file after forcing it and starts a new one, the closed file is returned for delete()
+    Path rotate() throws IOException {
+        synchronized (syncLock) {
+            synchronized (this) {
+                channel.force(false);
+                channel.close();
+                synced = written;
+                Path rotated = current;
+                openCurrent();
+                return rotated;
+            }
+        }
+    }
+
+    // Appended and forced at once, dead letters are rare. An entry may appear twice when it fails again after a crash
+    void deadLetter(List<Entry> entries) throws IOException {
+        StringBuilder lines = new StringBuilder();
+        for (Entry entry : entries) {
+            lines.append(objectMapper.writeValueAsString(entry)).append('\n');
+        }
+        try (FileChannel deadLetters = FileChannel.open(directory.resolve(DEAD_LETTERS), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            ByteBuffer buffer = ByteBuffer.wrap(lines.toString().getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                deadLetters.write(buffer);
+            }
+            deadLetters.force(false);
+        }
+    }
+
+    void delete(Path file) throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (syncLock) {
+            synchronized (this) {
+                channel.force(false);
+                channel.close();
+                synced = written;
+            }
+        }
+    }
+
+    private void openCurrent() throws IOException {
+        do {
+            current = directory.resolve(String.format("%020d%s", sequence++, SUFFIX));
+        } while (Files.exists(current));
+        channel = FileChannel.open(current, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    // The id of an entry becomes the id of its stock movement, replay skips entries whose movement exists
+    record Entry(UUID id, UUID productId, int delta, String reason, String username, LocalDateTime date) {
+    }
+}
@@ -2,41 +2,124 @@ package org.example.imsbackend.services;
 
 
 import lombok.RequiredArgsConstructor;
+import org.example.imsbackend.components.MovementLeaderboard;
+import org.example.imsbackend.dto.CursorPage;
+import org.example.imsbackend.dto.DailyMovementCount;
+import org.example.imsbackend.dto.StockMovementCursor;
+import org.example.imsbackend.dto.StockMovementCursorFilter;
+import org.example.imsbackend.dto.StockMovementDTO;
 import org.example.imsbackend.dto.StockMovementFilter;
-import org.example.imsbackend.dto.UsernameCount;
 import org.example.imsbackend.enums.Category;
 import org.example.imsbackend.enums.StockMovementAction;
 import org.example.imsbackend.enums.StockMovementType;
 import org.example.imsbackend.models.Product;
 import org.example.imsbackend.models.ProductName;
 import org.example.imsbackend.models.StockMovement;
+import org.example.imsbackend.repositories.StockMovementBatchRepository;
 import org.example.imsbackend.repositories.StockMovementRepository;
+import org.example.imsbackend.repositories.StockMovementRollupRepository;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.util.Pair;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.validation.annotation.Validated;
 
+import java.time.Duration;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.UUID;
+import java.util.stream.Collectors;
 
 @Service
 @Validated
 @RequiredArgsConstructor
 public class StockMovementService {
+    private static final int MAX_SCROLL_SIZE = 100;
+
     private final StockMovementRepository stockMovementRepository;
+    private final StockMovementRollupRepository stockMovementRollupRepository;
+    private final MovementLeaderboard movementLeaderboard;
+    private final StockMovementBatchRepository stockMovementBatchRepository;
+
+    // Movements are stamped with the time they are built, the ones committed later than this still reach their hour
+    @Value("${ims.dashboard.rollups.grace-ms:600000}")
+    private long rollupGraceMs = 600_000;
 
     public StockMovement save(StockMovement stockMovement) {
-        return stockMovementRepository.save(stockMovement);
+        StockMovement savedMovement = stockMovementRepository.save(stockMovement);
+        recordOnCommit(List.of(savedMovement));
+        return savedMovement;
+    }
+
+    // One JDBC batch instead of one persist per movement
+    public void saveAll(List<StockMovement> stockMovements) {
+        stockMovementBatchRepository.insertAll(stockMovements);
+        // Stock deltas keep the time they were submitted, replayed ones can be older than the hours already rolled
+        // up. Half the grace period leaves a margin for the commit
+        LocalDateTime late = LocalDateTime.now().minus(Duration.ofMillis(rollupGraceMs / 2));
+        List<UUID> lateIds = stockMovements.stream()
+                .filter(stockMovement -> stockMovement.getDate() != null && stockMovement.getDate().isBefore(late))
+                .map(StockMovement::getId)
+                .toList();
+        if (!lateIds.isEmpty()) {
+            stockMovementRollupRepository.rollUpLate(lateIds);
+        }
+        recordOnCommit(stockMovements);
     }
 
-    public Page<StockMovement> getAllStockMovements(StockMovementFilter filter) {
+    // The leaderboard only counts committed movements, a rolled back or retried transaction records nothing
+    private void recordOnCommit(List<StockMovement> stockMovements) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    stockMovements.forEach(movementLeaderboard::record);
+                }
+            });
+        } else {
+            stockMovements.forEach(movementLeaderboard::record);
+        }
+    }
+
+    @Transactional(readOnly = true)
+    public Page<StockMovementDTO> getAllStockMovements(StockMovementFilter filter) {
         Pageable pageable = PageRequest.of(filter.getPage(), filter.getSize());
-        return stockMovementRepository.findAllByOrderByDateDesc(pageable);
+        return stockMovementRepository.findAllDtos(pageable);
+    }
+
+    // Newest first keyset pagination, throws IllegalArgumentException for an invalid cursor or size
+    public CursorPage<StockMovement> scrollStockMovements(StockMovementCursorFilter filter) {
+        int size = filter.getSize();
+        if (size < 1 || size > MAX_SCROLL_SIZE) {
+            throw new IllegalArgumentException("size must be between 1 and " + MAX_SCROLL_SIZE);
+        }
+        // One extra row tells whether there is a next page without counting
+        Limit limit = Limit.of(size + 1);
+        List<StockMovement> rows;
+        if (filter.getCursor() == null || filter.getCursor().isBlank()) {
+            rows = stockMovementRepository.findAllByOrderByDateDescIdAsc(limit);
+        } else {
+            StockMovementCursor cursor = StockMovementCursor.decode(filter.getCursor());
+            rows = stockMovementRepository.findAllAfter(cursor.date(), cursor.id(), limit);
+        }
+        if (rows.size() <= size) {
+            return new CursorPage<>(rows, size, false, null, null);
+        }
+        List<StockMovement> content = rows.subList(0, size);
+        StockMovement last = content.getLast();
+        return new CursorPage<>(content, size, true, new StockMovementCursor(last.getDate(), last.getId()).encode(), null);
     }
 
     public static StockMovement calculateStockMovement(Product oldProduct, Product newProduct, StockMovementAction action, String username) {
@@ -47,6 +130,7 @@ public class StockMovementService {
         }
         StockMovement stockMovement = new StockMovement();
         stockMovement.setProduct(new ProductName(newProduct.getId(), newProduct.getName()));
+        stockMovement.setCategory(newProduct.getCategory());
         stockMovement.setDate(LocalDateTime.now());
         if (action == StockMovementAction.DELETED){
             stockMovement.setType(StockMovementType.OUTGOING);
@@ -63,25 +147,29 @@ public class StockMovementService {
         return stockMovement;
     }
 
+    // Rolls up the whole hours that ended at least the grace period ago, later hours are read from stock_movements
+    @Scheduled(fixedDelayString = "${ims.dashboard.rollups.interval-ms:60000}")
+    public void rollUpMovements() {
+        stockMovementRollupRepository.rollUp(LocalDateTime.now().minus(Duration.ofMillis(rollupGraceMs)).truncatedTo(ChronoUnit.HOURS));
+    }
+
     // Dashboard methods
     // Count of stock movements by type in the last 24 hours
     public long countStockMovementsByTypeInLast24Hours(StockMovementType type, LocalDateTime since) {
-        return stockMovementRepository.countByTypeAndDateAfter(type, since);
-    }
-
-    // Count of stock movements grouped by username in the last 24 hours
-    public List<UsernameCount> countStockMovementsByUsernameInLast24Hours(LocalDateTime since) {
-        return stockMovementRepository.countByUsernameAfter(since);
+        return stockMovementRollupRepository.countByTypeSince(type, since);
     }
 
     // Stock movements in the last 7 days grouped by day
     public List<Pair<LocalDateTime, Long>> stockMovementsLast7Days(StockMovementType type) {
-        LocalDateTime now = LocalDateTime.now();
-        return Arrays.stream(new int[]{6,5,4,3,2,1,0})
+        LocalDateTime firstDay = LocalDate.now().minusDays(6).atStartOfDay();
+        Map<LocalDateTime, DailyMovementCount> counts = stockMovementRollupRepository.dailyCountsSince(firstDay).stream()
+                .collect(Collectors.toMap(DailyMovementCount::day, count -> count));
+        return Arrays.stream(new int[]{0,1,2,3,4,5,6})
                 .mapToObj(i -> {
-                    LocalDateTime start = now.minusDays(i).withHour(0).withMinute(0).withSecond(0).withNano(0);
-                    LocalDateTime end = start.plusDays(1);
-                    return Pair.of(start,stockMovementRepository.countByTypeAndDateBetween(type, start, end));
+                    LocalDateTime start = firstDay.plusDays(i);
+                    DailyMovementCount count = counts.get(start);
+                    long value = count == null ? 0 : type == StockMovementType.INCOMING ? count.in() : count.out();
+                    return Pair.of(start, value);
                 })
                 .toList();
     }
@@ -96,5 +184,8 @@ public class StockMovementService {
 
     public long count(){ return stockMovementRepository.count(); }
 
-    public void deleteAll(){ stockMovementRepository.deleteAll(); }
+    public void deleteAll(){
+        stockMovementRepository.deleteAll();
+        stockMovementRollupRepository.deleteAll();
+    }
 }
@@ -0,0 +1,4 @@
+-- Product names are sorted in code point order (ucs_basic) so the database and the in-memory search index agree,
+-- the (name, id) keyset index in the database collation is replaced by one in that order
+CREATE INDEX IF NOT EXISTS idx_products_name_ucs_id ON products (name COLLATE ucs_basic, id);
+DROP INDEX IF EXISTS idx_products_name_id;
@@ -0,0 +1,54 @@
+-- On a fresh database Hibernate creates stock_movements after Flyway runs, create it here so the trigger can be attached
+CREATE TABLE IF NOT EXISTS stock_movements
+(
+    id         UUID         NOT NULL,
+    date       TIMESTAMP    NOT NULL,
+    type       VARCHAR(255) NOT NULL,
+    product_id UUID         NOT NULL,
+    name       VARCHAR(255) NOT NULL,
+    username   VARCHAR(50)  NOT NULL,
+    quantity   INTEGER      NOT NULL,
+    action     VARCHAR(255) NOT NULL,
+    CONSTRAINT pk_stock_movements PRIMARY KEY (id)
+);
+
+-- Hourly movement counts, the category is captured when the movement is recorded
+CREATE TABLE stock_movement_rollups
+(
+    bucket         TIMESTAMP    NOT NULL,
+    type           VARCHAR(255) NOT NULL,
+    category       VARCHAR(255) NOT NULL,
+    username       VARCHAR(255) NOT NULL,
+    movement_count BIGINT       NOT NULL,
+    quantity       BIGINT       NOT NULL,
+    CONSTRAINT pk_stock_movement_rollups PRIMARY KEY (bucket, type, category, username)
+);
+
+INSERT INTO stock_movement_rollups (bucket, type, category, username, movement_count, quantity)
+SELECT date_trunc('hour', sm.date), sm.type, COALESCE(p.category, 'UNKNOWN'), sm.username, COUNT(*), COALESCE(SUM(sm.quantity), 0)
+FROM stock_movements sm
+         LEFT JOIN products p ON p.id = sm.product_id
+GROUP BY 1, 2, 3, 4;
+
+CREATE OR REPLACE FUNCTION rollup_stock_movement() RETURNS TRIGGER AS
+$$
+BEGIN
+    INSERT INTO stock_movement_rollups (bucket, type, category, username, movement_count, quantity)
+    VALUES (date_trunc('hour', NEW.date),
+            NEW.type,
+            COALESCE((SELECT p.category FROM products p WHERE p.id = NEW.product_id), 'UNKNOWN'),
+            NEW.username,
+            1,
+            NEW.quantity)
+    ON CONFLICT (bucket, type, category, username)
+        DO UPDATE SET movement_count = stock_movement_rollups.movement_count + 1,
+                      quantity       = stock_movement_rollups.quantity + EXCLUDED.quantity;
+    RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER trg_stock_movements_rollup
+    AFTER INSERT
+    ON stock_movements
+    FOR EACH ROW
+EXECUTE FUNCTION rollup_stock_movement();
@@ -0,0 +1,2 @@
+-- Matches the (date DESC, id ASC) order of the stock movement history, keyset pages start with an index range scan
+CREATE INDEX IF NOT EXISTS idx_stock_movements_date_id ON stock_movements (date DESC, id);
@@ -0,0 +1,3 @@
+-- Keysets of the product search scroll mode, (name, id) and (price, id) in ascending order
+CREATE INDEX IF NOT EXISTS idx_products_name_id ON products (name, id);
+CREATE INDEX IF NOT EXISTS idx_products_price_id ON products (price, id);
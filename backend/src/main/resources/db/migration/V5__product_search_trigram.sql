@@ -0,0 +1,21 @@
+-- Creating pg_trgm needs extra privileges on some managed databases, product search falls back to LIKE without it
+DO
+$$
+    BEGIN
+        CREATE EXTENSION IF NOT EXISTS pg_trgm;
+    EXCEPTION
+        WHEN insufficient_privilege OR undefined_file THEN
+            RAISE NOTICE 'pg_trgm is not available, product search falls back to LIKE';
+    END
+$$;
+
+-- Trigram indexes serve the relevance search and also the '%term%' LIKE filter of the paged search
+DO
+$$
+    BEGIN
+        IF EXISTS (SELECT 1 FROM pg_extension WHERE extname = 'pg_trgm') THEN
+            CREATE INDEX IF NOT EXISTS idx_products_name_trgm ON products USING gin (lower(name) gin_trgm_ops);
+            CREATE INDEX IF NOT EXISTS idx_products_description_trgm ON products USING gin (lower(description) gin_trgm_ops);
+        END IF;
+    END
+$$;
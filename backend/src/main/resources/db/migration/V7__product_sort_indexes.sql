@@ -0,0 +1,12 @@
+-- minimum_stock is created by Hibernate on databases that predate it in the migrations
+ALTER TABLE products ADD COLUMN IF NOT EXISTS minimum_stock INTEGER NOT NULL DEFAULT 0;
+
+-- Sort key of the stock to minimum ratio, null when there is no minimum
+ALTER TABLE products
+    ADD COLUMN IF NOT EXISTS stock_ratio DOUBLE PRECISION
+        GENERATED ALWAYS AS (stock::DOUBLE PRECISION / NULLIF(minimum_stock, 0)) STORED;
+
+-- Search sort keys, (name, id) and (price, id) already exist for the scroll mode
+CREATE INDEX IF NOT EXISTS idx_products_stock_id ON products (stock, id);
+CREATE INDEX IF NOT EXISTS idx_products_category_id ON products (category, id);
+CREATE INDEX IF NOT EXISTS idx_products_stock_ratio_id ON products (stock_ratio, id);
@@ -0,0 +1,2 @@
+-- Reason sent with stock adjustments, movements recorded by product writes keep it null
+ALTER TABLE stock_movements ADD COLUMN IF NOT EXISTS reason VARCHAR(255);
@@ -0,0 +1,31 @@
+-- The per-row trigger upserted one shared hourly row per movement, concurrent writers serialized on its lock. Rollups
+-- are now filled by a scheduled job up to a watermark and reads add the movements after it from stock_movements.
+DROP TRIGGER IF EXISTS trg_stock_movements_rollup ON stock_movements;
+DROP FUNCTION IF EXISTS rollup_stock_movement();
+
+-- The category is captured when the movement is recorded, rows written before this migration are backfilled below
+ALTER TABLE stock_movements ADD COLUMN IF NOT EXISTS category VARCHAR(255);
+
+-- Single row, every movement dated before rolled_up_to is counted in stock_movement_rollups
+CREATE TABLE stock_movement_rollup_state
+(
+    id           INTEGER   NOT NULL,
+    rolled_up_to TIMESTAMP NOT NULL,
+    CONSTRAINT pk_stock_movement_rollup_state PRIMARY KEY (id)
+);
+
+-- The trigger counted every movement so far, the hour of the latest one may still receive movements and is handed
+-- over to the job: it is removed from the rollups and read from stock_movements until the job rolls it up again
+INSERT INTO stock_movement_rollup_state (id, rolled_up_to)
+SELECT 1, date_trunc('hour', COALESCE(MAX(date), LOCALTIMESTAMP))
+FROM stock_movements;
+
+DELETE FROM stock_movement_rollups
+WHERE bucket >= (SELECT rolled_up_to FROM stock_movement_rollup_state WHERE id = 1);
+
+UPDATE stock_movements sm
+SET category = p.category
+FROM products p
+WHERE p.id = sm.product_id
+  AND sm.category IS NULL
+  AND sm.date >= (SELECT rolled_up_to FROM stock_movement_rollup_state WHERE id = 1);
@@ -0,0 +1,108 @@
+package org.example.imsbackend.benchmarks;
+
+import org.example.imsbackend.enums.Category;
+import org.example.imsbackend.models.Product;
+import org.example.imsbackend.services.ProductService;
+import org.example.imsbackend.services.ProductUpdateService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 200 writers adding one unit of stock to the same product at the same time. Every write is a read-modify-write, so
+ * without the version check concurrent writers would overwrite each other. The final stock and the recorded movements
+ * must add up to exactly the number of successful writes. Retries are raised so every writer eventually succeeds.
+ * Run with ./gradlew benchmark, it needs the same database as the Cucumber tests.
+ */
+@SpringBootTest(properties = "ims.products.update.max-attempts=1000")
+class ProductUpdateContentionBenchmark {
+    private static final int WRITERS = 200;
+    private static final int INITIAL_STOCK = 1000;
+    private static final String USERNAME = "contention-benchmark";
+
+    @Autowired
+    private ProductService productService;
+    @Autowired
+    private ProductUpdateService productUpdateService;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private UUID productId;
+
+    @BeforeEach
+    void createProduct() {
+        Product product = new Product();
+        product.setName("Contended product");
+        product.setDescription("Benchmark product");
+        product.setPrice(10.0);
+        product.setInitialStock(INITIAL_STOCK);
+        product.setMinimumStock(0);
+        product.setStock(INITIAL_STOCK);
+        product.setCategory(Category.ELECTRONICS);
+        productId = productService.saveProduct(null, product).getId();
+    }
+
+    @AfterEach
+    void cleanUp() {
+        productService.getProductById(productId).ifPresent(productService::deleteProduct);
+        jdbcTemplate.update("DELETE FROM stock_movements WHERE username = ?", USERNAME);
+        jdbcTemplate.update("DELETE FROM stock_movement_rollups WHERE username = ?", USERNAME);
+    }
+
+    @Test
+    void concurrentWritersToOneProduct() throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger conflicts = new AtomicInteger();
+        List<Future<?>> writers = new ArrayList<>(WRITERS);
+        long begin;
+        try (ExecutorService executor = Executors.newFixedThreadPool(WRITERS)) {
+            for (int i = 0; i < WRITERS; i++) {
+                writers.add(executor.submit(() -> {
+                    start.await();
+                    try {
+                        productUpdateService.update(productId, product -> product.setStock(product.getStock() + 1), USERNAME);
+                    } catch (OptimisticLockingFailureException e) {
+                        conflicts.incrementAndGet();
+                    }
+                    return null;
+                }));
+            }
+            begin = System.nanoTime();
+            start.countDown();
+            for (Future<?> writer : writers) {
+                writer.get();
+            }
+        }
+        double seconds = (System.nanoTime() - begin) / 1e9;
+
+        int succeeded = WRITERS - conflicts.get();
+        int stock = productService.getProductById(productId).orElseThrow().getStock();
+        Integer movements = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM stock_movements WHERE username = ? AND product_id = ?", Integer.class, USERNAME, productId);
+        Integer quantity = jdbcTemplate.queryForObject(
+                "SELECT COALESCE(SUM(quantity), 0) FROM stock_movements WHERE username = ? AND product_id = ?", Integer.class,
+                USERNAME, productId);
+
+        System.out.printf("%d writers: %d succeeded, %d conflicts in %.2f s, %.0f writes/s%n",
+                WRITERS, succeeded, conflicts.get(), seconds, succeeded / seconds);
+        assertEquals(WRITERS, succeeded);
+        assertEquals(INITIAL_STOCK + succeeded, stock);
+        assertEquals(succeeded, movements);
+        assertEquals(succeeded, quantity);
+    }
+}
@@ -0,0 +1,114 @@
+package org.example.imsbackend.benchmarks;
+
+import jakarta.persistence.EntityManager;
+import org.example.imsbackend.dto.ProductDTO;
+import org.example.imsbackend.dto.StockMovementFilter;
+import org.example.imsbackend.enums.Category;
+import org.example.imsbackend.mappers.ProductMapper;
+import org.example.imsbackend.models.Product;
+import org.example.imsbackend.repositories.ProductRepository;
+import org.example.imsbackend.services.ProductService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Allocation per request of the low stock page read as managed entities and mapped, like before the projections, and
+ * read as a DTO projection. Run with ./gradlew benchmark, it needs the same database as the Cucumber tests.
+ */
+@SpringBootTest
+class ReadProjectionBenchmark {
+    private static final int PRODUCTS = 2000;
+    private static final int PAGE_SIZE = 100;
+    private static final int WARMUP = 200;
+    private static final int ITERATIONS = 1000;
+
+    @Autowired
+    private ProductService productService;
+    @Autowired
+    private ProductRepository productRepository;
+    @Autowired
+    private EntityManager entityManager;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private final List<UUID> seeded = new ArrayList<>();
+
+    @BeforeEach
+    void seed() {
+        List<Product> products = new ArrayList<>(PRODUCTS);
+        for (int i = 0; i < PRODUCTS; i++) {
+            Product product = new Product();
+            product.setName("Benchmark product " + i);
+            product.setDescription("Seeded by the read projection benchmark");
+            product.setPrice(10.0 + i);
+            product.setInitialStock(10);
+            product.setMinimumStock(10);
+            product.setStock(i % 10);
+            product.setCategory(Category.values()[i % Category.values().length]);
+            products.add(product);
+        }
+        productRepository.saveAll(products).forEach(product -> seeded.add(product.getId()));
+    }
+
+    @AfterEach
+    void cleanUp() {
+        productRepository.deleteAllById(seeded);
+        seeded.clear();
+    }
+
+    @Test
+    void projectionShouldAllocateLessThanEntityMapping() {
+        StockMovementFilter filter = new StockMovementFilter(0, PAGE_SIZE);
+        Supplier<Page<ProductDTO>> entities = () -> transactionTemplate.execute(status -> {
+            List<Product> content = entityManager
+                    .createQuery("SELECT p FROM Product p WHERE p.stock < p.minimumStock", Product.class)
+                    .setMaxResults(PAGE_SIZE)
+                    .getResultList();
+            long total = entityManager
+                    .createQuery("SELECT COUNT(p) FROM Product p WHERE p.stock < p.minimumStock", Long.class)
+                    .getSingleResult();
+            return new PageImpl<>(content, PageRequest.of(0, PAGE_SIZE), total).map(ProductMapper.INSTANCE::toDto);
+        });
+        Supplier<Page<ProductDTO>> projection = () -> productService.productsBelowMinimumStock(filter);
+
+        Result entityResult = measure(entities);
+        Result projectionResult = measure(projection);
+        System.out.printf("entity + mapper: %d bytes/op, %.0f ops/s%n", entityResult.bytesPerOp(), entityResult.opsPerSecond());
+        System.out.printf("DTO projection:  %d bytes/op, %.0f ops/s%n", projectionResult.bytesPerOp(), projectionResult.opsPerSecond());
+
+        assertTrue(projectionResult.bytesPerOp() < entityResult.bytesPerOp());
+    }
+
+    private static Result measure(Supplier<Page<ProductDTO>> read) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        for (int i = 0; i < WARMUP; i++) {
+            read.get();
+        }
+        long bytes = threads.getCurrentThreadAllocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            read.get();
+        }
+        long elapsed = System.nanoTime() - start;
+        bytes = threads.getCurrentThreadAllocatedBytes() - bytes;
+        return new Result(bytes / ITERATIONS, ITERATIONS / (elapsed / 1e9));
+    }
+
+    private record Result(long bytesPerOp, double opsPerSecond) {
+    }
+}
@@ -0,0 +1,73 @@
+package org.example.imsbackend.benchmarks;
+
+import org.example.imsbackend.dto.StockMovementExportFilter;
+import org.example.imsbackend.enums.ExportFormat;
+import org.example.imsbackend.services.ExportService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.OutputStream;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Export throughput in rows per second of a date range of stock movements, written to a discarding stream so only
+ * the cursor and the serialization are measured. Run with ./gradlew benchmark, it needs the same database as the
+ * Cucumber tests.
+ */
+@SpringBootTest
+class StockMovementExportBenchmark {
+    private static final int MOVEMENTS = 200_000;
+    private static final String USERNAME = "export-benchmark";
+
+    @Autowired
+    private ExportService exportService;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private LocalDateTime from;
+
+    @BeforeEach
+    void seed() {
+        from = LocalDateTime.now().minusYears(20);
+        UUID productId = UUID.randomUUID();
+        List<Object[]> rows = new ArrayList<>(MOVEMENTS);
+        for (int i = 0; i < MOVEMENTS; i++) {
+            rows.add(new Object[]{UUID.randomUUID(), Timestamp.valueOf(from.plusMinutes(i)), i % 2 == 0 ? "INCOMING" : "OUTGOING",
+                    productId, "Benchmark product", USERNAME, i % 50, "UPDATED"});
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO stock_movements (id, date, type, product_id, name, username, quantity, action) " +
+                "VALUES (?, ?, ?, ?, ?, ?, ?, ?)", rows);
+    }
+
+    @AfterEach
+    void cleanUp() {
+        jdbcTemplate.update("DELETE FROM stock_movements WHERE username = ?", USERNAME);
+        jdbcTemplate.update("DELETE FROM stock_movement_rollups WHERE username = ?", USERNAME);
+    }
+
+    @Test
+    void exportThroughput() throws Exception {
+        for (ExportFormat format : ExportFormat.values()) {
+            ExportService.StockMovementExport export = exportService.stockMovementExport(new StockMovementExportFilter(
+                    from, from.plusMinutes(MOVEMENTS), null, null, USERNAME, format.name()));
+            exportService.exportStockMovements(export, OutputStream.nullOutputStream()); // warm up
+
+            long start = System.nanoTime();
+            long rows = exportService.exportStockMovements(export, OutputStream.nullOutputStream());
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            System.out.printf("%s: %d rows in %.2f s, %.0f rows/s%n", format, rows, seconds, rows / seconds);
+            assertEquals(MOVEMENTS, rows);
+        }
+    }
+}
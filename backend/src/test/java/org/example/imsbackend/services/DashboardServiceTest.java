@@ -0,0 +1,246 @@
+package org.example.imsbackend.services;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.imsbackend.components.InventoryCounters;
+import org.example.imsbackend.components.MovementLeaderboard;
+import org.example.imsbackend.dto.CategoryInventory;
+import org.example.imsbackend.dto.DailyMovementCount;
+import org.example.imsbackend.dto.LeaderboardDTO;
+import org.example.imsbackend.dto.LeaderboardFilter;
+import org.example.imsbackend.dto.MovementBucket;
+import org.example.imsbackend.dto.MovementHistogramDTO;
+import org.example.imsbackend.dto.MovementHistogramFilter;
+import org.example.imsbackend.dto.StatsData;
+import org.example.imsbackend.enums.Category;
+import org.example.imsbackend.enums.HistogramGranularity;
+import org.example.imsbackend.enums.LeaderboardDimension;
+import org.example.imsbackend.repositories.DashboardStatsRepository;
+import org.example.imsbackend.repositories.StockMovementRollupRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.mockito.Mockito.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(MockitoExtension.class)
+public class DashboardServiceTest {
+    @Mock
+    private DashboardStatsRepository dashboardStatsRepository;
+
+    @Mock
+    private ProductService productService;
+
+    @Mock
+    private InventoryCounters inventoryCounters;
+
+    @Mock
+    private StockMovementRollupRepository stockMovementRollupRepository;
+
+    @Mock
+    private MovementLeaderboard movementLeaderboard;
+
+    @Spy
+    private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @InjectMocks
+    private DashboardService dashboardService;
+
+    @BeforeEach
+    void setUp() {
+        Mockito.reset(dashboardStatsRepository, productService, inventoryCounters, stockMovementRollupRepository, movementLeaderboard);
+        ReflectionTestUtils.setField(dashboardService, "maxHistogramBuckets", 100);
+        ReflectionTestUtils.setField(dashboardService, "maxLeaderboardLimit", 50);
+    }
+
+    void stubStatsSections() {
+        when(inventoryCounters.snapshot()).thenReturn(List.of(
+                new CategoryInventory(Category.ELECTRONICS, 2, 55, 50499.5),
+                new CategoryInventory(Category.FOOD, 1, 500, 1495.0)
+        ));
+        when(dashboardStatsRepository.movementsByCategory()).thenReturn(Map.of(Category.ELECTRONICS, 10L));
+        when(stockMovementRollupRepository.movementsSince(any(), eq(3)))
+                .thenReturn(new StatsData.MovementsLast24Hours(4, 2, List.of(new StatsData.ObjectCount("user1", 6))));
+    }
+
+    @Test
+    void getStats_ShouldBuildSummaryFromInventoryCounters() {
+        stubStatsSections();
+        when(stockMovementRollupRepository.dailyCountsSince(any())).thenReturn(List.of());
+
+        StatsData.Summary summary = dashboardService.getStats().summary();
+
+        assertEquals(3, summary.totalProducts());
+        assertEquals(555, summary.totalStock());
+        assertEquals(51994.5, summary.totalValue(), 0.01);
+    }
+
+    @Test
+    void getStats_ShouldReportEveryCategory() {
+        stubStatsSections();
+        when(stockMovementRollupRepository.dailyCountsSince(any())).thenReturn(List.of());
+
+        StatsData result = dashboardService.getStats();
+
+        assertEquals(Category.values().length, result.categoriesDistribution().size());
+        assertEquals(Category.values().length, result.categoriesMovement().size());
+        assertEquals(0, result.categoriesDistribution().stream()
+                .filter(count -> count.name().equals(Category.TOYS.getDisplayName()))
+                .findFirst().orElseThrow().value());
+    }
+
+    @Test
+    void getStats_ShouldFillMissingDaysWithZero() {
+        stubStatsSections();
+        LocalDateTime today = LocalDate.now().atStartOfDay();
+        when(stockMovementRollupRepository.dailyCountsSince(today.minusDays(6)))
+                .thenReturn(List.of(new DailyMovementCount(today, 5, 3)));
+
+        StatsData.MovementsLast7Days result = dashboardService.getStats().movementsLast7Days();
+
+        assertEquals(7, result.in().size());
+        assertEquals(7, result.out().size());
+        assertEquals(today.minusDays(6), result.in().getFirst().date());
+        assertEquals(0, result.in().getFirst().count());
+        assertEquals(5, result.in().getLast().count());
+        assertEquals(3, result.out().getLast().count());
+    }
+
+    @Test
+    void getStats_ShouldQueryEachSectionOnce() {
+        stubStatsSections();
+        when(stockMovementRollupRepository.dailyCountsSince(any())).thenReturn(List.of());
+
+        dashboardService.getStats();
+
+        verify(inventoryCounters, times(1)).snapshot();
+        verify(dashboardStatsRepository, never()).inventoryByCategory();
+        verify(dashboardStatsRepository, times(1)).movementsByCategory();
+        verify(stockMovementRollupRepository, times(1)).movementsSince(any(), eq(3));
+        verify(stockMovementRollupRepository, times(1)).dailyCountsSince(any());
+        verifyNoInteractions(productService);
+    }
+
+    @Test
+    void getStats_WithSlowSection_ShouldReturnPartialStats() {
+        stubStatsSections();
+        ReflectionTestUtils.setField(dashboardService, "sectionTimeoutMs", 100L);
+        when(stockMovementRollupRepository.dailyCountsSince(any())).thenAnswer(invocation -> {
+            Thread.sleep(1000);
+            return List.of();
+        });
+
+        StatsData result = dashboardService.getStats();
+
+        assertNull(result.movementsLast7Days());
+        assertNotNull(result.summary());
+        assertNotNull(result.categoriesMovement());
+        assertNotNull(result.movementsLast24Hours());
+    }
+
+    @Test
+    void getStats_WithFailingSection_ShouldReturnPartialStats() {
+        stubStatsSections();
+        when(stockMovementRollupRepository.dailyCountsSince(any())).thenThrow(new IllegalStateException("Connection refused"));
+
+        StatsData result = dashboardService.getStats();
+
+        assertNull(result.movementsLast7Days());
+        assertNotNull(result.summary());
+        assertNotNull(result.categoriesMovement());
+        assertNotNull(result.movementsLast24Hours());
+        assertEquals(1, meterRegistry.get("ims.dashboard.sections.partial")
+                .tag("section", "movementsLast7Days").tag("reason", "failure").counter().count());
+    }
+
+    @Test
+    void getMovementHistogram_ShouldReturnBucketsFromRollups() {
+        LocalDateTime to = LocalDateTime.now();
+        LocalDateTime from = to.minusHours(12);
+        List<MovementBucket> buckets = List.of(new MovementBucket(from, 1, 2));
+        when(stockMovementRollupRepository.histogram(HistogramGranularity.HOUR, from, to, 100)).thenReturn(buckets);
+
+        MovementHistogramDTO result = dashboardService.getMovementHistogram(new MovementHistogramFilter(from, to, "hour"));
+
+        assertEquals("HOUR", result.granularity());
+        assertEquals(buckets, result.buckets());
+    }
+
+    @Test
+    void getMovementHistogram_WithTooManyBuckets_ShouldThrow() {
+        LocalDateTime to = LocalDateTime.now();
+        MovementHistogramFilter filter = new MovementHistogramFilter(to.minusDays(365), to, "HOUR");
+
+        assertThrows(IllegalArgumentException.class, () -> dashboardService.getMovementHistogram(filter));
+        verifyNoInteractions(stockMovementRollupRepository);
+    }
+
+    @Test
+    void getMovementHistogram_WithInvalidWindow_ShouldThrow() {
+        LocalDateTime now = LocalDateTime.now();
+
+        assertThrows(IllegalArgumentException.class,
+                () -> dashboardService.getMovementHistogram(new MovementHistogramFilter(now, now.minusDays(1), "DAY")));
+        assertThrows(IllegalArgumentException.class,
+                () -> dashboardService.getMovementHistogram(new MovementHistogramFilter(now.minusDays(1), now, "YEAR")));
+    }
+
+    @Test
+    void getLeaderboard_WithOpenWindow_ShouldUseInMemoryLeaderboard() {
+        List<StatsData.ObjectCount> top = List.of(new StatsData.ObjectCount("user1", 6));
+        when(movementLeaderboard.top(eq(LeaderboardDimension.USERNAME), any(), eq(3))).thenReturn(Optional.of(top));
+
+        LeaderboardDTO result = dashboardService.getLeaderboard(new LeaderboardFilter(null, null, "username", 3));
+
+        assertEquals("USERNAME", result.dimension());
+        assertEquals(top, result.entries());
+        verifyNoInteractions(stockMovementRollupRepository);
+    }
+
+    @Test
+    void getLeaderboard_WithClosedWindow_ShouldLimitInDatabase() {
+        LocalDateTime to = LocalDateTime.now().minusDays(2);
+        LocalDateTime from = to.minusDays(30);
+        List<StatsData.ObjectCount> top = List.of(new StatsData.ObjectCount("Electronics", 12));
+        when(stockMovementRollupRepository.leaderboard(LeaderboardDimension.CATEGORY, from, to, 5)).thenReturn(top);
+
+        LeaderboardDTO result = dashboardService.getLeaderboard(new LeaderboardFilter(from, to, "CATEGORY", 5));
+
+        assertEquals(top, result.entries());
+        verifyNoInteractions(movementLeaderboard);
+    }
+
+    @Test
+    void getLeaderboard_WhenWindowIsNotInMemory_ShouldFallBackToDatabase() {
+        LocalDateTime from = LocalDateTime.now().minusDays(3);
+        when(movementLeaderboard.top(LeaderboardDimension.PRODUCT, from, 10)).thenReturn(Optional.empty());
+        when(stockMovementRollupRepository.leaderboard(eq(LeaderboardDimension.PRODUCT), eq(from), any(), eq(10))).thenReturn(List.of());
+
+        LeaderboardDTO result = dashboardService.getLeaderboard(new LeaderboardFilter(from, null, "PRODUCT", 10));
+
+        assertTrue(result.entries().isEmpty());
+    }
+
+    @Test
+    void getLeaderboard_WithInvalidLimit_ShouldThrow() {
+        assertThrows(IllegalArgumentException.class,
+                () -> dashboardService.getLeaderboard(new LeaderboardFilter(null, null, "USERNAME", 0)));
+        assertThrows(IllegalArgumentException.class,
+                () -> dashboardService.getLeaderboard(new LeaderboardFilter(null, null, "USERNAME", 51)));
+        verifyNoInteractions(stockMovementRollupRepository, movementLeaderboard);
+    }
+}
@@ -0,0 +1,137 @@
+package org.example.imsbackend.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.example.imsbackend.dto.ProductDTO;
+import org.example.imsbackend.dto.StockMovementDTO;
+import org.example.imsbackend.dto.StockMovementExportFilter;
+import org.example.imsbackend.enums.Category;
+import org.example.imsbackend.enums.ExportFormat;
+import org.example.imsbackend.enums.StockMovementAction;
+import org.example.imsbackend.enums.StockMovementType;
+import org.example.imsbackend.repositories.ProductRepository;
+import org.example.imsbackend.repositories.StockMovementRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import static org.mockito.Mockito.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(MockitoExtension.class)
+public class ExportServiceTest {
+    @Mock
+    private ProductRepository productRepository;
+
+    @Mock
+    private StockMovementRepository stockMovementRepository;
+
+    @Spy
+    private ObjectMapper objectMapper = new ObjectMapper();
+
+    @InjectMocks
+    private ExportService exportService;
+
+    ProductDTO laptop, chair;
+
+    @BeforeEach
+    void setUp() {
+        laptop = new ProductDTO(UUID.randomUUID(), "Laptop", "15\" screen, 16GB", 999.99, 50, 10, 45, Category.ELECTRONICS, null);
+        chair = new ProductDTO(UUID.randomUUID(), "Chair", "Office chair", 120.0, 20, 5, 18, Category.FURNITURE, null);
+        Mockito.reset(productRepository, stockMovementRepository);
+    }
+
+    @Test
+    void exportProducts_AsNdjson_ShouldWriteOneObjectPerLine() throws Exception {
+        when(productRepository.streamAll()).thenReturn(Stream.of(laptop, chair));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        long rows = exportService.exportProducts(ExportFormat.NDJSON, out);
+
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(2, rows);
+        assertEquals(2, lines.length);
+        assertEquals("Laptop", objectMapper.readValue(lines[0], Map.class).get("name"));
+        assertEquals("FURNITURE", objectMapper.readValue(lines[1], Map.class).get("category"));
+    }
+
+    @Test
+    void exportProducts_AsCsv_ShouldWriteHeaderAndQuoteSpecialCharacters() throws Exception {
+        when(productRepository.streamAll()).thenReturn(Stream.of(laptop));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        exportService.exportProducts(ExportFormat.CSV, out);
+
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\r\n");
+        assertEquals("id,name,description,price,initialStock,minimumStock,stock,category", lines[0]);
+        assertEquals(laptop.id() + ",Laptop,\"15\"\" screen, 16GB\",999.99,50,10,45,ELECTRONICS", lines[1]);
+    }
+
+    @Test
+    void stockMovementExport_WithFilters_ShouldParseThem() {
+        LocalDateTime from = LocalDateTime.of(2025, 1, 1, 0, 0);
+        LocalDateTime to = LocalDateTime.of(2025, 4, 1, 0, 0);
+
+        ExportService.StockMovementExport export = exportService.stockMovementExport(
+                new StockMovementExportFilter(from, to, "outgoing", "updated", "auditor", "csv"));
+
+        assertEquals(new ExportService.StockMovementExport(ExportFormat.CSV, from, to, StockMovementType.OUTGOING,
+                StockMovementAction.UPDATED, "auditor"), export);
+    }
+
+    @Test
+    void stockMovementExport_WithInvalidFilter_ShouldThrow() {
+        LocalDateTime now = LocalDateTime.now();
+
+        assertThrows(IllegalArgumentException.class,
+                () -> exportService.stockMovementExport(new StockMovementExportFilter(null, now, null, null, null, null)));
+        assertThrows(IllegalArgumentException.class,
+                () -> exportService.stockMovementExport(new StockMovementExportFilter(now, now.minusDays(1), null, null, null, null)));
+        assertThrows(IllegalArgumentException.class,
+                () -> exportService.stockMovementExport(new StockMovementExportFilter(now.minusDays(1), now, "SIDEWAYS", null, null, null)));
+        assertThrows(IllegalArgumentException.class,
+                () -> exportService.stockMovementExport(new StockMovementExportFilter(now.minusDays(1), now, null, null, null, "parquet")));
+    }
+
+    @Test
+    void exportStockMovements_AsCsv_ShouldFlattenTheProduct() throws Exception {
+        LocalDateTime from = LocalDateTime.of(2025, 1, 1, 0, 0);
+        LocalDateTime to = LocalDateTime.of(2025, 4, 1, 0, 0);
+        UUID productId = UUID.randomUUID();
+        StockMovementDTO movement = new StockMovementDTO(UUID.randomUUID(), LocalDateTime.of(2025, 2, 3, 4, 5, 6),
+                StockMovementType.INCOMING, productId, "Laptop", "auditor", 5, StockMovementAction.INSERTED, null);
+        when(stockMovementRepository.streamForExport(from, to, null, null, null)).thenReturn(Stream.of(movement));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        long rows = exportService.exportStockMovements(
+                new ExportService.StockMovementExport(ExportFormat.CSV, from, to, null, null, null), out);
+
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\r\n");
+        assertEquals(1, rows);
+        assertEquals("id,date,type,productId,productName,username,quantity,action,reason", lines[0]);
+        assertEquals(movement.id() + ",2025-02-03T04:05:06,INCOMING," + productId + ",Laptop,auditor,5,INSERTED,", lines[1]);
+    }
+
+    @Test
+    void acceptsGzip_ShouldHonourQualityValuesAndExactCodings() {
+        assertTrue(ExportService.acceptsGzip("gzip, deflate, br"));
+        assertTrue(ExportService.acceptsGzip("deflate;q=1.0, GZIP;q=0.5"));
+        assertTrue(ExportService.acceptsGzip("*"));
+        assertFalse(ExportService.acceptsGzip(null));
+        assertFalse(ExportService.acceptsGzip("gzip;q=0"));
+        assertFalse(ExportService.acceptsGzip("gzip; q=0.000, deflate"));
+        assertFalse(ExportService.acceptsGzip("*, gzip;q=0"));
+        assertFalse(ExportService.acceptsGzip("x-gzip-foo, identity"));
+    }
+}
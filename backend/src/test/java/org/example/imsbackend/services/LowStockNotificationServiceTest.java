@@ -1,5 +1,6 @@
 package org.example.imsbackend.services;
 
+import org.example.imsbackend.dto.LowStockNotificationDTO;
 import org.example.imsbackend.dto.LowStockNotificationFilter;
 import org.example.imsbackend.enums.Category;
 import org.example.imsbackend.models.LowStockNotification;
@@ -82,14 +83,15 @@ public class LowStockNotificationServiceTest {
         filter.setPage(0);
         filter.setSize(10);
 
-        when(lowStockNotificationRepository.findAllByOrderByDateDesc(any(Pageable.class)))
-                .thenReturn(new PageImpl<>(List.of(notification1, notification2)));
+        LowStockNotificationDTO notification = new LowStockNotificationDTO(LocalDateTime.of(2025, 3, 1, 10, 0, 30),
+                UUID.randomUUID(), "Headphones", 5, 10);
+        when(lowStockNotificationRepository.findAllDtos(any(Pageable.class))).thenReturn(new PageImpl<>(List.of(notification)));
 
-        Page<LowStockNotification> result = lowStockNotificationService.findAll(filter);
+        Page<LowStockNotificationDTO> result = lowStockNotificationService.findAll(filter);
 
-        assertEquals(2, result.getTotalElements());
-        assertTrue(result.getContent().contains(notification1));
-        assertTrue(result.getContent().contains(notification2));
+        assertEquals(1, result.getTotalElements());
+        assertEquals("2025-03-01T10:00:30", result.getContent().getFirst().date());
+        assertEquals("Headphones", result.getContent().getFirst().product().name());
     }
 
     @Test
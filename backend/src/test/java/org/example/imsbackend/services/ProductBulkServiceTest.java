@@ -0,0 +1,255 @@
+package org.example.imsbackend.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.validation.Validator;
+import org.example.imsbackend.dto.BulkResultDTO;
+import org.example.imsbackend.dto.ProductDTO;
+import org.example.imsbackend.dto.StockAdjustmentDTO;
+import org.example.imsbackend.enums.BulkRowStatus;
+import org.example.imsbackend.enums.Category;
+import org.example.imsbackend.enums.StockMovementType;
+import org.example.imsbackend.models.LowStockNotification;
+import org.example.imsbackend.models.Product;
+import org.example.imsbackend.models.StockMovement;
+import org.example.imsbackend.repositories.ProductRepository;
+import org.example.imsbackend.repositories.ProductStockRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.mockito.Mockito.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(MockitoExtension.class)
+public class ProductBulkServiceTest {
+    @Mock
+    private ProductRepository productRepository;
+
+    @Mock
+    private ProductStockRepository productStockRepository;
+
+    @Mock
+    private ProductService productService;
+
+    @Mock
+    private StockMovementService stockMovementService;
+
+    @Mock
+    private LowStockNotificationService lowStockNotificationService;
+
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    @Mock
+    private Validator validator;
+
+    @Spy
+    private ObjectMapper objectMapper = new ObjectMapper();
+
+    @InjectMocks
+    private ProductBulkService productBulkService;
+
+    Product existing;
+    List<Product[]> writes;
+
+    @BeforeEach
+    void setUp() {
+        existing = new Product();
+        existing.setId(UUID.randomUUID());
+        existing.setName("Laptop");
+        existing.setDescription("Gaming laptop");
+        existing.setPrice(999.99);
+        existing.setInitialStock(50);
+        existing.setMinimumStock(10);
+        existing.setStock(45);
+        existing.setCategory(Category.ELECTRONICS);
+        writes = new ArrayList<>();
+        Mockito.reset(productRepository, productStockRepository, productService, stockMovementService, lowStockNotificationService,
+                transactionTemplate, validator);
+    }
+
+    private void stubTransactionsAndValidation() {
+        when(transactionTemplate.execute(any())).thenAnswer(invocation ->
+                invocation.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
+        when(validator.validate(any())).thenReturn(Collections.emptySet());
+    }
+
+    private InputStream body(String json) {
+        return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private String json(ProductDTO product) throws Exception {
+        return objectMapper.writeValueAsString(product);
+    }
+
+    @Test
+    void upsertProducts_ShouldCreateAndUpdateRowsInOneChunk() throws Exception {
+        stubTransactionsAndValidation();
+        ProductDTO created = new ProductDTO(null, "Chair", "Office chair", 120.0, 3, 5, 3, Category.FURNITURE, null);
+        ProductDTO updated = new ProductDTO(existing.getId(), "Laptop", "Gaming laptop", 999.99, 50, 10, 40, Category.ELECTRONICS, null);
+        when(productRepository.findAllById(any())).thenReturn(List.of(existing));
+        when(productRepository.save(any(Product.class))).thenAnswer(invocation -> {
+            Product product = invocation.getArgument(0);
+            product.setId(UUID.randomUUID());
+            return product;
+        });
+        when(lowStockNotificationService.notificationFromProduct(any(Product.class)))
+                .thenAnswer(invocation -> invocation.<Product>getArgument(0).getStock() < 5 ? new LowStockNotification() : null);
+
+        BulkResultDTO result = productBulkService.upsertProducts(body("[" + json(created) + "," + json(updated) + "]"), "admin",
+                (before, after) -> writes.add(new Product[]{before, after}));
+
+        assertEquals(1, result.created());
+        assertEquals(1, result.updated());
+        assertEquals(0, result.failed());
+        assertEquals(1, result.lowStockNotifications());
+        assertNull(result.error());
+        assertEquals(BulkRowStatus.CREATED, result.rows().get(0).status());
+        assertEquals(BulkRowStatus.UPDATED, result.rows().get(1).status());
+        assertEquals(40, existing.getStock());
+        ArgumentCaptor<StockMovement> movements = ArgumentCaptor.forClass(StockMovement.class);
+        verify(stockMovementService, times(2)).save(movements.capture());
+        assertEquals(StockMovementType.INCOMING, movements.getAllValues().get(0).getType());
+        assertEquals(StockMovementType.OUTGOING, movements.getAllValues().get(1).getType());
+        assertEquals(5, movements.getAllValues().get(1).getQuantity());
+        verify(lowStockNotificationService, times(1)).save(any(LowStockNotification.class));
+        verify(transactionTemplate, times(1)).execute(any());
+        verify(productService, times(1)).productsWritten(any());
+        assertEquals(2, writes.size());
+        assertNull(writes.get(0)[0]);
+        assertEquals(45, writes.get(1)[0].getStock());
+    }
+
+    @Test
+    void upsertProducts_WithInvalidAndUnknownRows_ShouldReportThemPerRow() throws Exception {
+        stubTransactionsAndValidation();
+        ProductDTO unknown = new ProductDTO(UUID.randomUUID(), "Desk", "Standing desk", 300.0, 5, 1, 5, Category.FURNITURE, null);
+        when(productRepository.findAllById(any())).thenReturn(List.of());
+
+        BulkResultDTO result = productBulkService.upsertProducts(body("[{\"name\": \"Desk\", \"price\": \"cheap\"}," + json(unknown) + "]"),
+                "admin", (before, after) -> writes.add(new Product[]{before, after}));
+
+        assertEquals(0, result.created() + result.updated());
+        assertEquals(2, result.failed());
+        assertEquals(BulkRowStatus.INVALID, result.rows().get(0).status());
+        assertEquals(BulkRowStatus.NOT_FOUND, result.rows().get(1).status());
+        assertEquals(unknown.id(), result.rows().get(1).id());
+        verify(stockMovementService, never()).save(any());
+        assertTrue(writes.isEmpty());
+    }
+
+    @Test
+    void upsertProducts_WithMalformedJson_ShouldKeepEarlierChunks() throws Exception {
+        stubTransactionsAndValidation();
+        ReflectionTestUtils.setField(productBulkService, "chunkSize", 1);
+        ProductDTO created = new ProductDTO(null, "Chair", "Office chair", 120.0, 20, 5, 20, Category.FURNITURE, null);
+        when(productRepository.findAllById(any())).thenReturn(List.of());
+        when(productRepository.save(any(Product.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        BulkResultDTO result = productBulkService.upsertProducts(body("[" + json(created) + ", {\"name\": "), "admin",
+                (before, after) -> writes.add(new Product[]{before, after}));
+
+        assertEquals(1, result.created());
+        assertNotNull(result.error());
+        assertEquals(1, writes.size());
+    }
+
+    @Test
+    void upsertProducts_WhenAChunkFails_ShouldReportItsRowsAndKeepTheOtherChunks() throws Exception {
+        when(validator.validate(any())).thenReturn(Collections.emptySet());
+        ReflectionTestUtils.setField(productBulkService, "chunkSize", 1);
+        ProductDTO first = new ProductDTO(null, "Chair", "Office chair", 120.0, 20, 5, 20, Category.FURNITURE, null);
+        ProductDTO second = new ProductDTO(existing.getId(), "Laptop", "Gaming laptop", 999.99, 50, 10, 40, Category.ELECTRONICS, null);
+        ProductDTO third = new ProductDTO(null, "Desk", "Standing desk", 300.0, 5, 1, 5, Category.FURNITURE, null);
+        when(transactionTemplate.execute(any()))
+                .thenAnswer(invocation -> invocation.<TransactionCallback<?>>getArgument(0).doInTransaction(null))
+                .thenThrow(new OptimisticLockingFailureException("Updated by another transaction"))
+                .thenAnswer(invocation -> invocation.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
+        when(productRepository.findAllById(any())).thenReturn(List.of());
+        when(productRepository.save(any(Product.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        BulkResultDTO result = productBulkService.upsertProducts(body("[" + json(first) + "," + json(second) + "," + json(third) + "]"),
+                "admin", (before, after) -> writes.add(new Product[]{before, after}));
+
+        assertEquals(2, result.created());
+        assertEquals(1, result.failed());
+        assertNotNull(result.error());
+        assertEquals(BulkRowStatus.FAILED, result.rows().get(1).status());
+        assertEquals(existing.getId(), result.rows().get(1).id());
+        assertEquals(BulkRowStatus.CREATED, result.rows().get(2).status());
+        assertEquals(2, writes.size());
+    }
+
+    @Test
+    void upsertProducts_WithoutArray_ShouldThrow() {
+        assertThrows(IllegalArgumentException.class,
+                () -> productBulkService.upsertProducts(body("{\"name\": \"Chair\"}"), "admin", (before, after) -> {}));
+        verify(transactionTemplate, never()).execute(any());
+    }
+
+    @Test
+    void adjustStock_ShouldApplyNetDeltaOncePerProductAndRecordEachEntry() {
+        stubTransactionsAndValidation();
+        UUID missing = UUID.randomUUID();
+        existing.setStock(47);
+        when(productStockRepository.addStock(existing.getId(), 2)).thenReturn(Optional.of(existing));
+        when(productStockRepository.addStock(missing, 1)).thenReturn(Optional.empty());
+        List<StockAdjustmentDTO> adjustments = List.of(
+                new StockAdjustmentDTO(existing.getId(), 5, "Delivery"),
+                new StockAdjustmentDTO(missing, 1, null),
+                new StockAdjustmentDTO(existing.getId(), -3, "Picking"));
+
+        BulkResultDTO result = productBulkService.adjustStock(adjustments, "scanner",
+                (before, after) -> writes.add(new Product[]{before, after}));
+
+        assertEquals(2, result.updated());
+        assertEquals(1, result.failed());
+        assertEquals(BulkRowStatus.UPDATED, result.rows().get(0).status());
+        assertEquals(BulkRowStatus.REJECTED, result.rows().get(1).status());
+        assertEquals(BulkRowStatus.UPDATED, result.rows().get(2).status());
+        ArgumentCaptor<List<StockMovement>> movements = ArgumentCaptor.forClass(List.class);
+        verify(stockMovementService).saveAll(movements.capture());
+        assertEquals(2, movements.getValue().size());
+        assertEquals(StockMovementType.INCOMING, movements.getValue().get(0).getType());
+        assertEquals(5, movements.getValue().get(0).getQuantity());
+        assertEquals("Delivery", movements.getValue().get(0).getReason());
+        assertEquals(StockMovementType.OUTGOING, movements.getValue().get(1).getType());
+        assertEquals(3, movements.getValue().get(1).getQuantity());
+        verify(stockMovementService, never()).save(any());
+        verify(productService).productsWritten(any());
+        assertEquals(1, writes.size());
+        assertEquals(45, writes.get(0)[0].getStock());
+        assertEquals(47, writes.get(0)[1].getStock());
+    }
+
+    @Test
+    void adjustStock_WithTooManyEntries_ShouldThrow() {
+        ReflectionTestUtils.setField(productBulkService, "maxAdjustments", 1);
+        List<StockAdjustmentDTO> adjustments = List.of(
+                new StockAdjustmentDTO(existing.getId(), 1, null),
+                new StockAdjustmentDTO(existing.getId(), 1, null));
+
+        assertThrows(IllegalArgumentException.class,
+                () -> productBulkService.adjustStock(adjustments, "scanner", (before, after) -> {}));
+        verifyNoInteractions(productStockRepository, transactionTemplate);
+    }
+}
@@ -1,10 +1,23 @@
 package org.example.imsbackend.services;
 
+import org.example.imsbackend.components.ProductReadCache;
+import org.example.imsbackend.components.ProductSearchCounts;
+import org.example.imsbackend.components.ProductSearchIndex;
+import org.example.imsbackend.components.ProductSuggestions;
+import org.example.imsbackend.dto.CursorPage;
+import org.example.imsbackend.dto.InventoryTotals;
+import org.example.imsbackend.dto.ProductCursor;
+import org.example.imsbackend.dto.ProductDTO;
+import org.example.imsbackend.dto.ProductFacets;
 import org.example.imsbackend.dto.ProductFilter;
+import org.example.imsbackend.dto.ProductNameDTO;
 import org.example.imsbackend.dto.StockMovementFilter;
 import org.example.imsbackend.enums.Category;
+import org.example.imsbackend.enums.ProductScrollSort;
+import org.example.imsbackend.enums.ProductSort;
 import org.example.imsbackend.models.Product;
 import org.example.imsbackend.repositories.ProductRepository;
+import org.example.imsbackend.repositories.ProductSearchRepository;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -16,12 +29,15 @@ import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.domain.Specification;
 
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 import static org.mockito.Mockito.*;
 import static org.mockito.ArgumentMatchers.any;
@@ -34,6 +50,21 @@ public class ProductServiceTest {
     @Mock
     private ProductRepository productRepository;
 
+    @Mock
+    private ProductSearchCounts productSearchCounts;
+
+    @Mock
+    private ProductSearchRepository productSearchRepository;
+
+    @Mock
+    private ProductSearchIndex productSearchIndex;
+
+    @Mock
+    private ProductSuggestions productSuggestions;
+
+    @Mock
+    private ProductReadCache productReadCache;
+
     @InjectMocks
     private ProductService productService;
 
@@ -58,7 +89,11 @@ public class ProductServiceTest {
         product3 = createTestProduct("Apples", Category.FOOD, 2.99, 500, 50);
         lowStockProduct = createTestProduct("Headphones", Category.ELECTRONICS, 199.99, 5, 10);
         nullProduct = null;
-        Mockito.reset(productRepository);
+        Mockito.reset(productRepository, productSearchCounts, productSearchRepository, productSearchIndex, productSuggestions, productReadCache);
+    }
+
+    void stubSearchCacheMiss() {
+        when(productReadCache.search(any(), any())).thenAnswer(invocation -> invocation.<Supplier<Page<Product>>>getArgument(1).get());
     }
 
     @Test
@@ -68,6 +103,7 @@ public class ProductServiceTest {
         filter.setPage(0);
         filter.setSize(10);
 
+        stubSearchCacheMiss();
         when(productRepository.findAll(any(Specification.class), any(Pageable.class)))
                 .thenReturn(new PageImpl<>(List.of(product1)));
 
@@ -77,6 +113,124 @@ public class ProductServiceTest {
         assertEquals(product1, result.getContent().get(0));
     }
 
+    @Test
+    void getAllProducts_WithIndexBuilt_ShouldNotQueryDatabase() {
+        ProductFilter filter = new ProductFilter();
+        filter.setName("lap");
+        stubSearchCacheMiss();
+        when(productSearchIndex.search(filter, ProductSort.NAME, false)).thenReturn(Optional.of(new PageImpl<>(List.of(product1))));
+
+        Page<Product> result = productService.getAllProducts(filter);
+
+        assertEquals(List.of(product1), result.getContent());
+        verifyNoInteractions(productRepository);
+    }
+
+    @Test
+    void scrollProducts_FirstPage_ShouldReturnCursorWithoutCounting() {
+        product1.setId(UUID.randomUUID());
+        product2.setId(UUID.randomUUID());
+        ProductFilter filter = new ProductFilter();
+        filter.setSort("price");
+        filter.setSize(2);
+        when(productRepository.findBy(any(Specification.class), any())).thenReturn(List.of(product3, product2, product1));
+
+        CursorPage<Product> result = productService.scrollProducts(filter);
+
+        assertEquals(List.of(product3, product2), result.content());
+        assertTrue(result.hasNext());
+        assertNull(result.total());
+        ProductCursor cursor = ProductCursor.decode(result.nextCursor());
+        assertEquals(ProductScrollSort.PRICE, cursor.sort());
+        assertEquals(product2.getPrice(), Double.valueOf(cursor.key()));
+        assertEquals(product2.getId(), cursor.id());
+        verify(productRepository, never()).count(any(Specification.class));
+        verifyNoInteractions(productSearchCounts);
+    }
+
+    @Test
+    void scrollProducts_WithTotal_ShouldUseCachedCount() {
+        ProductFilter filter = new ProductFilter();
+        filter.setWithTotal(true);
+        when(productRepository.findBy(any(Specification.class), any())).thenReturn(List.of(product1));
+        when(productSearchCounts.count(eq(filter), any())).thenReturn(42L);
+
+        CursorPage<Product> result = productService.scrollProducts(filter);
+
+        assertFalse(result.hasNext());
+        assertNull(result.nextCursor());
+        assertEquals(42L, result.total());
+    }
+
+    @Test
+    void scrollProducts_WithCursorOfAnotherSort_ShouldThrow() {
+        ProductFilter filter = new ProductFilter();
+        filter.setSort("NAME");
+        filter.setCursor(new ProductCursor(ProductScrollSort.PRICE, "9.99", UUID.randomUUID()).encode());
+
+        assertThrows(IllegalArgumentException.class, () -> productService.scrollProducts(filter));
+        verifyNoInteractions(productRepository);
+    }
+
+    @Test
+    void searchProductsByRelevance_ShouldKeepRelevanceOrder() {
+        product1.setId(UUID.randomUUID());
+        product2.setId(UUID.randomUUID());
+        ProductFilter filter = new ProductFilter();
+        filter.setName("lap");
+        when(productSearchRepository.searchIds(filter, 10)).thenReturn(List.of(product2.getId(), product1.getId()));
+        when(productRepository.findAllById(List.of(product2.getId(), product1.getId()))).thenReturn(List.of(product1, product2));
+
+        List<Product> result = productService.searchProductsByRelevance(filter);
+
+        assertEquals(List.of(product2, product1), result);
+    }
+
+    @Test
+    void searchProductsByRelevance_WithoutTerm_ShouldThrow() {
+        assertThrows(IllegalArgumentException.class, () -> productService.searchProductsByRelevance(new ProductFilter()));
+        verifyNoInteractions(productSearchRepository);
+    }
+
+    @Test
+    void productFacets_ShouldIssueSingleFacetQuery() {
+        ProductFilter filter = new ProductFilter();
+        filter.setCategories(List.of(Category.ELECTRONICS));
+        ProductFacets facets = new ProductFacets(
+                List.of(new ProductFacets.CategoryCount(Category.ELECTRONICS, 2)),
+                List.of(new ProductFacets.PriceBucket(0, 100, 2)));
+        when(productSearchRepository.facets(filter, 10)).thenReturn(facets);
+
+        assertEquals(facets, productService.productFacets(filter));
+        verify(productSearchRepository, times(1)).facets(filter, 10);
+        verifyNoInteractions(productRepository);
+    }
+
+    @Test
+    void productFacets_WithTooManyBuckets_ShouldThrow() {
+        ProductFilter filter = new ProductFilter();
+        filter.setPriceBuckets(51);
+
+        assertThrows(IllegalArgumentException.class, () -> productService.productFacets(filter));
+        verifyNoInteractions(productSearchRepository);
+    }
+
+    @Test
+    void suggestProductNames_ShouldReturnSuggestionsWithoutQueryingDatabase() {
+        List<ProductNameDTO> suggestions = List.of(new ProductNameDTO(UUID.randomUUID(), "Laptop"));
+        when(productSuggestions.suggest("lap", 5)).thenReturn(suggestions);
+
+        assertEquals(suggestions, productService.suggestProductNames("lap", 5));
+        verifyNoInteractions(productRepository);
+    }
+
+    @Test
+    void suggestProductNames_WithInvalidLimit_ShouldThrow() {
+        assertThrows(IllegalArgumentException.class, () -> productService.suggestProductNames("lap", 0));
+        assertThrows(IllegalArgumentException.class, () -> productService.suggestProductNames("lap", 21));
+        verifyNoInteractions(productSuggestions);
+    }
+
     @Test
     void getProductById_ExistingProduct_ShouldReturnProduct() {
         UUID id = UUID.randomUUID();
@@ -88,29 +242,122 @@ public class ProductServiceTest {
         assertEquals(product1, result.get());
     }
 
+    @Test
+    void getAllProducts_WithSort_ShouldOrderByKeyAndId() {
+        ProductFilter filter = new ProductFilter();
+        filter.setSort("stock_ratio");
+        filter.setDirection("desc");
+        stubSearchCacheMiss();
+        when(productSearchIndex.search(filter, ProductSort.STOCK_RATIO, true)).thenReturn(Optional.empty());
+        when(productRepository.findAll(any(Specification.class), any(Pageable.class))).thenReturn(Page.empty());
+
+        productService.getAllProducts(filter);
+
+        verify(productRepository).findAll(any(Specification.class), argThat((Pageable pageable) ->
+                pageable.getSort().equals(Sort.by(Sort.Direction.DESC, "stockRatio", "id"))));
+    }
+
+    @Test
+    void getAllProducts_SortedByName_ShouldOrderInTheSpecification() {
+        ProductFilter filter = new ProductFilter();
+        stubSearchCacheMiss();
+        when(productSearchIndex.search(filter, ProductSort.NAME, false)).thenReturn(Optional.empty());
+        when(productRepository.findAll(any(Specification.class), any(Pageable.class))).thenReturn(Page.empty());
+
+        productService.getAllProducts(filter);
+
+        // The collated name order is set by the specification, a Sort would use the database collation
+        verify(productRepository).findAll(any(Specification.class), argThat((Pageable pageable) -> pageable.getSort().isUnsorted()));
+    }
+
+    @Test
+    void productSortName_ShouldCompareCodePoints() {
+        Product supplementary = new Product();
+        supplementary.setId(UUID.randomUUID());
+        supplementary.setName("📦 Box");
+        Product privateUse = new Product();
+        privateUse.setId(UUID.randomUUID());
+        privateUse.setName("Ａ Box");
+
+        // UTF-16 order would put the surrogate pair first
+        assertTrue(ProductSort.NAME.comparator(false).compare(privateUse, supplementary) < 0);
+    }
+
+    @Test
+    void getAllProducts_WithUnknownSort_ShouldThrow() {
+        ProductFilter filter = new ProductFilter();
+        filter.setSort("description");
+
+        assertThrows(IllegalArgumentException.class, () -> productService.getAllProducts(filter));
+        filter.setSort("price");
+        filter.setDirection("sideways");
+        assertThrows(IllegalArgumentException.class, () -> productService.getAllProducts(filter));
+        verifyNoInteractions(productReadCache, productRepository);
+    }
+
+    @Test
+    void getAllProducts_WhenCached_ShouldNotSearch() {
+        ProductFilter filter = new ProductFilter();
+        when(productReadCache.search(eq(filter), any())).thenReturn(new PageImpl<>(List.of(product1)));
+
+        Page<Product> result = productService.getAllProducts(filter);
+
+        assertEquals(List.of(product1), result.getContent());
+        verifyNoInteractions(productRepository, productSearchIndex);
+    }
+
+    @Test
+    void getProductDetails_ShouldReadThroughCache() {
+        UUID id = UUID.randomUUID();
+        when(productReadCache.product(eq(id), any())).thenAnswer(invocation ->
+                invocation.<Function<UUID, Optional<Product>>>getArgument(1).apply(id));
+        when(productRepository.findById(id)).thenReturn(Optional.of(product1));
+
+        Optional<Product> result = productService.getProductDetails(id);
+
+        assertEquals(Optional.of(product1), result);
+    }
+
+    @Test
+    void saveProduct_ExistingProduct_ShouldEvictPreviousAndNewState() {
+        UUID id = UUID.randomUUID();
+        product1.setId(id);
+        Product previous = createTestProduct("Laptop", Category.ELECTRONICS, 1299.99, 50, 10);
+        previous.setId(id);
+        when(productRepository.save(product1)).thenReturn(product1);
+
+        productService.saveProduct(previous, product1);
+
+        verify(productReadCache).productWritten(id, previous, product1);
+        verify(productRepository, never()).findById(any());
+    }
+
     @Test
     void saveProduct_ValidProduct_ShouldSaveAndReturnProduct() {
         when(productRepository.save(product1)).thenReturn(product1);
 
-        Product result = productService.saveProduct(product1);
+        Product result = productService.saveProduct(null, product1);
 
         assertEquals(product1, result);
         verify(productRepository).save(product1);
+        verify(productSearchCounts).invalidateAll();
     }
 
     @Test
     void deleteProduct_ExistingProduct_ShouldDeleteProduct() {
         UUID id = UUID.randomUUID();
+        product1.setId(id);
         doNothing().when(productRepository).deleteById(id);
 
-        productService.deleteProduct(id);
+        productService.deleteProduct(product1);
 
         verify(productRepository).deleteById(id);
+        verify(productReadCache).productWritten(id, product1, null);
     }
 
     @Test
     void totalStock_WithProducts_ShouldReturnCorrectSum() {
-        when(productRepository.findAll()).thenReturn(List.of(product1, product2, product3));
+        when(productRepository.inventoryTotals()).thenReturn(new InventoryTotalsImpl(3L, 750L, 0.0));
 
         long result = productService.totalStock();
 
@@ -119,27 +366,41 @@ public class ProductServiceTest {
 
     @Test
     void totalInventoryValue_WithProducts_ShouldReturnCorrectSum() {
-        when(productRepository.findAll()).thenReturn(List.of(product1, product2, product3));
+        double expected = (999.99 * 50) + (49.99 * 200) + (2.99 * 500);
+        when(productRepository.inventoryTotals()).thenReturn(new InventoryTotalsImpl(3L, 750L, expected));
 
         double result = productService.totalInventoryValue();
 
-        double expected = (999.99 * 50) + (49.99 * 200) + (2.99 * 500);
         assertEquals(expected, result, 0.01);
     }
 
+    @Test
+    void inventoryTotals_ShouldIssueSingleAggregateQuery() {
+        when(productRepository.inventoryTotals()).thenReturn(new InventoryTotalsImpl(3L, 750L, 1.0));
+
+        InventoryTotals result = productService.inventoryTotals();
+
+        assertEquals(3L, result.getTotalProducts());
+        verify(productRepository, times(1)).inventoryTotals();
+        verify(productRepository, never()).findAll();
+        verifyNoMoreInteractions(productRepository);
+    }
+
     @Test
     void productsBelowMinimumStock_ShouldReturnLowStockProducts() {
         StockMovementFilter filter = new StockMovementFilter();
         filter.setPage(0);
         filter.setSize(10);
 
+        ProductDTO lowStock = new ProductDTO(UUID.randomUUID(), "Headphones", "Wireless", 199.99, 10, 10, 5, Category.ELECTRONICS, null);
         when(productRepository.findProductsBelowMinimumStock(any(Pageable.class)))
-                .thenReturn(new PageImpl<>(List.of(lowStockProduct)));
+                .thenReturn(new PageImpl<>(List.of(lowStock)));
 
-        Page<Product> result = productService.productsBelowMinimumStock(filter);
+        Page<ProductDTO> result = productService.productsBelowMinimumStock(filter);
 
         assertEquals(1, result.getTotalElements());
-        assertEquals(lowStockProduct, result.getContent().get(0));
+        assertEquals(lowStock, result.getContent().get(0));
+        assertEquals("ELECTRONICS", result.getContent().get(0).category());
     }
 
     @Test
@@ -154,4 +415,31 @@ public class ProductServiceTest {
         assertEquals(1L, result.get(Category.CLOTHING));
         assertEquals(1L, result.get(Category.FOOD));
     }
+
+    public class InventoryTotalsImpl implements InventoryTotals {
+        private final Long totalProducts;
+        private final Long totalStock;
+        private final Double totalValue;
+
+        public InventoryTotalsImpl(Long totalProducts, Long totalStock, Double totalValue) {
+            this.totalProducts = totalProducts;
+            this.totalStock = totalStock;
+            this.totalValue = totalValue;
+        }
+
+        @Override
+        public Long getTotalProducts() {
+            return totalProducts;
+        }
+
+        @Override
+        public Long getTotalStock() {
+            return totalStock;
+        }
+
+        @Override
+        public Double getTotalValue() {
+            return totalValue;
+        }
+    }
 }
@@ -0,0 +1,184 @@
+package org.example.imsbackend.services;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.imsbackend.dto.ProductDTO;
+import org.example.imsbackend.enums.Category;
+import org.example.imsbackend.enums.StockMovementType;
+import org.example.imsbackend.models.LowStockNotification;
+import org.example.imsbackend.models.Product;
+import org.example.imsbackend.models.StockMovement;
+import org.example.imsbackend.repositories.ProductRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.mockito.Mockito.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(MockitoExtension.class)
+public class ProductUpdateServiceTest {
+    @Mock
+    private ProductRepository productRepository;
+
+    @Mock
+    private ProductService productService;
+
+    @Mock
+    private StockMovementService stockMovementService;
+
+    @Mock
+    private LowStockNotificationService lowStockNotificationService;
+
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    @Spy
+    private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @InjectMocks
+    private ProductUpdateService productUpdateService;
+
+    UUID productId;
+    ProductDTO changes;
+
+    Product stored(int stock) {
+        Product product = new Product();
+        product.setId(productId);
+        product.setName("Laptop");
+        product.setDescription("Gaming laptop");
+        product.setPrice(999.99);
+        product.setInitialStock(50);
+        product.setMinimumStock(10);
+        product.setStock(stock);
+        product.setCategory(Category.ELECTRONICS);
+        product.setVersion(1L);
+        return product;
+    }
+
+    @BeforeEach
+    void setUp() {
+        productId = UUID.randomUUID();
+        changes = new ProductDTO(productId, "Laptop", "Gaming laptop", 999.99, 50, 10, 40, Category.ELECTRONICS, null);
+        productUpdateService.registerMetrics();
+        ReflectionTestUtils.setField(productUpdateService, "backoffMs", 0L);
+        Mockito.reset(productRepository, productService, stockMovementService, lowStockNotificationService, transactionTemplate);
+        when(transactionTemplate.execute(any())).thenAnswer(invocation ->
+                invocation.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
+    }
+
+    @Test
+    void updateProduct_ShouldRecordMovementAgainstTheStoredStock() {
+        when(productRepository.findById(productId)).thenReturn(Optional.of(stored(45)));
+        when(productRepository.saveAndFlush(any(Product.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        Optional<ProductUpdateService.UpdatedProduct> result = productUpdateService.updateProduct(productId, changes, "admin");
+
+        assertTrue(result.isPresent());
+        assertEquals(45, result.get().before().getStock());
+        assertEquals(40, result.get().after().getStock());
+        assertEquals(1L, result.get().after().getVersion());
+        assertFalse(result.get().lowStockNotified());
+        ArgumentCaptor<StockMovement> movement = ArgumentCaptor.forClass(StockMovement.class);
+        verify(stockMovementService).save(movement.capture());
+        assertEquals(StockMovementType.OUTGOING, movement.getValue().getType());
+        assertEquals(5, movement.getValue().getQuantity());
+        verify(productService).productsWritten(any());
+    }
+
+    @Test
+    void updateProduct_WithTheStoredVersion_ShouldApplyTheChanges() {
+        when(productRepository.findById(productId)).thenReturn(Optional.of(stored(45)));
+        when(productRepository.saveAndFlush(any(Product.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        ProductDTO read = new ProductDTO(productId, "Laptop", "Gaming laptop", 999.99, 50, 10, 40, Category.ELECTRONICS, 1L);
+
+        Optional<ProductUpdateService.UpdatedProduct> result = productUpdateService.updateProduct(productId, read, "admin");
+
+        assertTrue(result.isPresent());
+        assertEquals(40, result.get().after().getStock());
+    }
+
+    @Test
+    void updateProduct_WithAStaleVersion_ShouldThrowConflictWithoutWriting() {
+        when(productRepository.findById(productId)).thenReturn(Optional.of(stored(45)));
+        ProductDTO stale = new ProductDTO(productId, "Laptop", "Gaming laptop", 999.99, 50, 10, 40, Category.ELECTRONICS, 0L);
+
+        assertThrows(ObjectOptimisticLockingFailureException.class,
+                () -> productUpdateService.updateProduct(productId, stale, "admin"));
+        verify(productRepository, never()).saveAndFlush(any());
+        verify(transactionTemplate, times(1)).execute(any());
+        verify(productService, never()).productsWritten(any());
+        assertEquals(1, meterRegistry.counter("ims.products.update.conflicts").count());
+    }
+
+    @Test
+    void updateProduct_OnConcurrentWrite_ShouldThrowConflictWithoutRetrying() {
+        when(productRepository.findById(productId)).thenReturn(Optional.of(stored(45)));
+        when(productRepository.saveAndFlush(any(Product.class)))
+                .thenThrow(new ObjectOptimisticLockingFailureException(Product.class, productId));
+
+        assertThrows(ObjectOptimisticLockingFailureException.class,
+                () -> productUpdateService.updateProduct(productId, changes, "admin"));
+        verify(transactionTemplate, times(1)).execute(any());
+        verify(stockMovementService, never()).save(any());
+        assertEquals(0, meterRegistry.counter("ims.products.update.retries").count());
+    }
+
+    @Test
+    void update_OnConflict_ShouldRetryTheChangeFromAFreshRead() {
+        when(productRepository.findById(productId)).thenReturn(Optional.of(stored(45)), Optional.of(stored(43)));
+        when(productRepository.saveAndFlush(any(Product.class)))
+                .thenThrow(new ObjectOptimisticLockingFailureException(Product.class, productId))
+                .thenAnswer(invocation -> invocation.getArgument(0));
+        when(lowStockNotificationService.notificationFromProduct(any(Product.class))).thenReturn(new LowStockNotification());
+
+        Optional<ProductUpdateService.UpdatedProduct> result = productUpdateService.update(productId,
+                product -> product.setStock(product.getStock() - 3), "admin");
+
+        assertTrue(result.isPresent());
+        assertEquals(43, result.get().before().getStock());
+        assertEquals(40, result.get().after().getStock());
+        assertTrue(result.get().lowStockNotified());
+        ArgumentCaptor<StockMovement> movement = ArgumentCaptor.forClass(StockMovement.class);
+        verify(stockMovementService, times(1)).save(movement.capture());
+        assertEquals(3, movement.getValue().getQuantity());
+        verify(transactionTemplate, times(2)).execute(any());
+        assertEquals(1, meterRegistry.counter("ims.products.update.retries").count());
+    }
+
+    @Test
+    void update_WhenRetriesRunOut_ShouldThrowConflict() {
+        ReflectionTestUtils.setField(productUpdateService, "maxAttempts", 3);
+        when(productRepository.findById(productId)).thenAnswer(invocation -> Optional.of(stored(45)));
+        when(productRepository.saveAndFlush(any(Product.class)))
+                .thenThrow(new ObjectOptimisticLockingFailureException(Product.class, productId));
+
+        assertThrows(ObjectOptimisticLockingFailureException.class,
+                () -> productUpdateService.update(productId, product -> product.setStock(product.getStock() + 1), "admin"));
+        verify(transactionTemplate, times(3)).execute(any());
+        verify(stockMovementService, never()).save(any());
+        verify(productService, never()).productsWritten(any());
+        assertEquals(1, meterRegistry.counter("ims.products.update.conflicts").count());
+    }
+
+    @Test
+    void updateProduct_WithUnknownProduct_ShouldReturnEmpty() {
+        when(productRepository.findById(productId)).thenReturn(Optional.empty());
+
+        assertTrue(productUpdateService.updateProduct(productId, changes, "admin").isEmpty());
+        verify(productRepository, never()).saveAndFlush(any());
+    }
+}
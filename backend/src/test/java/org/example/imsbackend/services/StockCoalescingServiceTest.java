@@ -0,0 +1,268 @@
+package org.example.imsbackend.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.imsbackend.enums.BulkRowStatus;
+import org.example.imsbackend.enums.Category;
+import org.example.imsbackend.enums.StockAckMode;
+import org.example.imsbackend.enums.StockMovementType;
+import org.example.imsbackend.models.Product;
+import org.example.imsbackend.models.StockMovement;
+import org.example.imsbackend.repositories.ProductStockRepository;
+import org.example.imsbackend.repositories.StockMovementBatchRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.stream.Stream;
+
+import static org.mockito.Mockito.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(MockitoExtension.class)
+public class StockCoalescingServiceTest {
+    @Mock
+    private ProductStockRepository productStockRepository;
+
+    @Mock
+    private StockMovementBatchRepository stockMovementBatchRepository;
+
+    @Mock
+    private ProductService productService;
+
+    @Mock
+    private StockMovementService stockMovementService;
+
+    @Mock
+    private LowStockNotificationService lowStockNotificationService;
+
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    @Spy
+    private ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+
+    @Spy
+    private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @InjectMocks
+    private StockCoalescingService stockCoalescingService;
+
+    @TempDir
+    Path journalDir;
+
+    UUID productId;
+    List<List<ProductService.ProductWrite>> flushed;
+
+    Product stored(int stock) {
+        Product product = new Product();
+        product.setId(productId);
+        product.setName("Console");
+        product.setDescription("Flash sale console");
+        product.setPrice(499.0);
+        product.setInitialStock(100);
+        product.setMinimumStock(5);
+        product.setStock(stock);
+        product.setCategory(Category.ELECTRONICS);
+        return product;
+    }
+
+    // Flushes are triggered by the tests, the scheduled flush never runs within a test
+    void start(StockCoalescingService service, StockAckMode ackMode) throws Exception {
+        ReflectionTestUtils.setField(service, "enabled", true);
+        ReflectionTestUtils.setField(service, "flushIntervalMs", 3_600_000L);
+        ReflectionTestUtils.setField(service, "ackMode", ackMode);
+        ReflectionTestUtils.setField(service, "journalDir", journalDir.toString());
+        service.setListener((writes, lowStockNotifications) -> flushed.add(writes));
+        service.start();
+    }
+
+    void stubTransactions() {
+        when(transactionTemplate.execute(any())).thenAnswer(invocation ->
+                invocation.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
+    }
+
+    @BeforeEach
+    void setUp() {
+        productId = UUID.randomUUID();
+        flushed = new ArrayList<>();
+        Mockito.reset(productStockRepository, stockMovementBatchRepository, productService, stockMovementService,
+                lowStockNotificationService, transactionTemplate);
+    }
+
+    @AfterEach
+    void stopFlusher() {
+        ScheduledExecutorService flusher = (ScheduledExecutorService) ReflectionTestUtils.getField(stockCoalescingService, "flusher");
+        if (flusher != null) {
+            flusher.shutdownNow();
+        }
+    }
+
+    @Test
+    void flush_ShouldApplyTheNetDeltaOnceAndRecordOneMovementPerDelta() throws Exception {
+        start(stockCoalescingService, StockAckMode.AFTER_FLUSH);
+        stubTransactions();
+        when(productStockRepository.addStock(productId, -3)).thenReturn(Optional.of(stored(7)));
+
+        CompletableFuture<BulkRowStatus> first = stockCoalescingService.submit(productId, -1, "Order 1", "shop");
+        CompletableFuture<BulkRowStatus> second = stockCoalescingService.submit(productId, -2, "Order 2", "shop");
+        assertFalse(first.isDone());
+        stockCoalescingService.flush();
+
+        assertEquals(BulkRowStatus.UPDATED, first.join());
+        assertEquals(BulkRowStatus.UPDATED, second.join());
+        verify(productStockRepository, times(1)).addStock(any(), anyInt());
+        ArgumentCaptor<List<StockMovement>> movements = ArgumentCaptor.forClass(List.class);
+        verify(stockMovementService).saveAll(movements.capture());
+        assertEquals(2, movements.getValue().size());
+        assertEquals(StockMovementType.OUTGOING, movements.getValue().get(0).getType());
+        assertEquals(1, movements.getValue().get(0).getQuantity());
+        assertEquals("Order 1", movements.getValue().get(0).getReason());
+        assertEquals(2, movements.getValue().get(1).getQuantity());
+        assertNotNull(movements.getValue().get(0).getId());
+        assertEquals(1, flushed.size());
+        assertEquals(10, flushed.getFirst().getFirst().before().getStock());
+        assertEquals(7, flushed.getFirst().getFirst().after().getStock());
+    }
+
+    @Test
+    void flush_WhenTheNetDeltaDoesNotFit_ShouldOnlyRejectTheDeltasThatDoNotFit() throws Exception {
+        start(stockCoalescingService, StockAckMode.AFTER_FLUSH);
+        stubTransactions();
+        when(productStockRepository.addStock(productId, -9)).thenReturn(Optional.empty());
+        when(productStockRepository.addStock(productId, 1)).thenReturn(Optional.of(stored(3)));
+        when(productStockRepository.addStock(productId, -10)).thenReturn(Optional.empty());
+
+        CompletableFuture<BulkRowStatus> restock = stockCoalescingService.submit(productId, 1, null, "shop");
+        CompletableFuture<BulkRowStatus> order = stockCoalescingService.submit(productId, -10, null, "shop");
+        stockCoalescingService.flush();
+
+        assertEquals(BulkRowStatus.UPDATED, restock.join());
+        assertEquals(BulkRowStatus.REJECTED, order.join());
+        ArgumentCaptor<List<StockMovement>> movements = ArgumentCaptor.forClass(List.class);
+        verify(stockMovementService).saveAll(movements.capture());
+        assertEquals(1, movements.getValue().size());
+        assertEquals(StockMovementType.INCOMING, movements.getValue().getFirst().getType());
+    }
+
+    @Test
+    void flush_WhenTheTransactionFails_ShouldFailTheRequests() throws Exception {
+        start(stockCoalescingService, StockAckMode.AFTER_FLUSH);
+        when(transactionTemplate.execute(any())).thenThrow(new IllegalStateException("database down"));
+
+        CompletableFuture<BulkRowStatus> delta = stockCoalescingService.submit(productId, 2, null, "shop");
+        stockCoalescingService.flush();
+
+        assertTrue(delta.isCompletedExceptionally());
+        assertTrue(flushed.isEmpty());
+    }
+
+    @Test
+    void submit_AfterAppend_ShouldAcknowledgeAndReplayUnflushedDeltasOnRestart() throws Exception {
+        start(stockCoalescingService, StockAckMode.AFTER_APPEND);
+
+        assertEquals(BulkRowStatus.ACCEPTED, stockCoalescingService.submit(productId, 4, "Delivery", "scanner").join());
+        assertEquals(BulkRowStatus.ACCEPTED, stockCoalescingService.submit(productId, 1, null, "scanner").join());
+        stopFlusher();
+
+        // Restart without a flush, both deltas come back from the journal
+        StockCoalescingService restarted = new StockCoalescingService(productStockRepository, stockMovementBatchRepository,
+                productService, stockMovementService, lowStockNotificationService, transactionTemplate, objectMapper,
+                new SimpleMeterRegistry());
+        when(stockMovementBatchRepository.existingIds(any())).thenReturn(Set.of());
+        start(restarted, StockAckMode.AFTER_APPEND);
+        stubTransactions();
+        when(productStockRepository.addStock(productId, 5)).thenReturn(Optional.of(stored(15)));
+        restarted.flush();
+
+        verify(productStockRepository).addStock(productId, 5);
+        try (Stream<Path> files = Files.list(journalDir)) {
+            // Only the current, empty, journal file of the restarted service is left
+            List<Path> left = files.toList();
+            assertEquals(1, left.size());
+            assertEquals(0, Files.size(left.getFirst()));
+        }
+        ((ScheduledExecutorService) ReflectionTestUtils.getField(restarted, "flusher")).shutdownNow();
+    }
+
+    @Test
+    void flush_AfterAppend_WhenAProductKeepsFailing_ShouldIsolateItAndDeadLetterItsDeltas() throws Exception {
+        start(stockCoalescingService, StockAckMode.AFTER_APPEND);
+        ReflectionTestUtils.setField(stockCoalescingService, "retryBackoffMs", 0L);
+        ReflectionTestUtils.setField(stockCoalescingService, "isolateAfterAttempts", 2);
+        ReflectionTestUtils.setField(stockCoalescingService, "maxAttempts", 3);
+        stubTransactions();
+        UUID broken = UUID.randomUUID();
+        when(productStockRepository.addStock(eq(broken), anyInt())).thenThrow(new DataIntegrityViolationException("integer out of range"));
+        lenient().when(productStockRepository.addStock(productId, 2)).thenReturn(Optional.of(stored(12)));
+
+        stockCoalescingService.submit(broken, Integer.MAX_VALUE, null, "scanner");
+        stockCoalescingService.submit(productId, 2, null, "scanner");
+        // Two failed flushes of both products, then each product in its own transaction
+        stockCoalescingService.flush();
+        stockCoalescingService.flush();
+        verify(stockMovementService, never()).saveAll(any());
+        stockCoalescingService.flush();
+
+        ArgumentCaptor<List<StockMovement>> movements = ArgumentCaptor.forClass(List.class);
+        verify(stockMovementService).saveAll(movements.capture());
+        assertEquals(productId, movements.getValue().getFirst().getProduct().getProductId());
+        assertEquals(1, flushed.size());
+        List<String> deadLetters = Files.readAllLines(journalDir.resolve("dead-letters.jsonl"));
+        assertEquals(1, deadLetters.size());
+        assertTrue(deadLetters.getFirst().contains(broken.toString()));
+        assertEquals(1, meterRegistry.counter("ims.products.stock-coalescing.dead-lettered").count());
+        // Nothing is left to retry
+        stockCoalescingService.flush();
+        verify(productStockRepository, times(3)).addStock(eq(broken), anyInt());
+    }
+
+    @Test
+    void start_AfterAppend_ShouldReplayDeltasOlderThanTheRollupWatermarkWithTheirOwnDate() throws Exception {
+        // Journal left by a run that stopped two days ago, long past the rollup grace period
+        LocalDateTime submitted = LocalDateTime.now().minusDays(2).withNano(0);
+        StockDeltaJournal.Entry entry = new StockDeltaJournal.Entry(UUID.randomUUID(), productId, -2, "Order 7", "scanner", submitted);
+        Files.writeString(journalDir.resolve("00000000000000000001.journal"), objectMapper.writeValueAsString(entry) + "\n");
+        when(stockMovementBatchRepository.existingIds(any())).thenReturn(Set.of());
+        start(stockCoalescingService, StockAckMode.AFTER_APPEND);
+        stubTransactions();
+        when(productStockRepository.addStock(productId, -2)).thenReturn(Optional.of(stored(8)));
+
+        stockCoalescingService.flush();
+
+        // Saved with the time it was submitted, saveAll adds it to its hour when that hour is already rolled up
+        ArgumentCaptor<List<StockMovement>> movements = ArgumentCaptor.forClass(List.class);
+        verify(stockMovementService).saveAll(movements.capture());
+        assertEquals(entry.id(), movements.getValue().getFirst().getId());
+        assertEquals(submitted, movements.getValue().getFirst().getDate());
+    }
+
+    @Test
+    void submit_WhenDisabled_ShouldThrow() {
+        assertThrows(IllegalStateException.class, () -> stockCoalescingService.submit(productId, 1, null, "shop"));
+    }
+}
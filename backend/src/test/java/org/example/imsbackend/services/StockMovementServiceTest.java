@@ -1,25 +1,36 @@
 package org.example.imsbackend.services;
 
+import org.example.imsbackend.components.MovementLeaderboard;
 import org.example.imsbackend.enums.Category;
 import org.example.imsbackend.enums.StockMovementAction;
 import org.example.imsbackend.enums.StockMovementType;
 import org.example.imsbackend.models.Product;
 import org.example.imsbackend.models.ProductName;
 import org.example.imsbackend.models.StockMovement;
+import org.example.imsbackend.repositories.StockMovementBatchRepository;
 import org.example.imsbackend.repositories.StockMovementRepository;
+import org.example.imsbackend.repositories.StockMovementRollupRepository;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.util.Pair;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
@@ -27,15 +38,27 @@ import java.util.UUID;
 import static org.mockito.Mockito.*;
 import static org.mockito.ArgumentMatchers.any;
 import static org.junit.jupiter.api.Assertions.*;
+import org.example.imsbackend.dto.CursorPage;
+import org.example.imsbackend.dto.DailyMovementCount;
+import org.example.imsbackend.dto.StockMovementCursor;
+import org.example.imsbackend.dto.StockMovementCursorFilter;
+import org.example.imsbackend.dto.StockMovementDTO;
 import org.example.imsbackend.dto.StockMovementFilter;
 
-import org.example.imsbackend.dto.UsernameCount;
-
 @ExtendWith(MockitoExtension.class)
 public class StockMovementServiceTest {
     @Mock
     private StockMovementRepository stockMovementRepository;
 
+    @Mock
+    private StockMovementRollupRepository stockMovementRollupRepository;
+
+    @Mock
+    private MovementLeaderboard movementLeaderboard;
+
+    @Mock
+    private StockMovementBatchRepository stockMovementBatchRepository;
+
     @InjectMocks
     private StockMovementService stockMovementService;
 
@@ -73,7 +96,7 @@ public class StockMovementServiceTest {
         product2 = createTestProduct("Jeans", Category.CLOTHING, 49.99, 200, 20);
         movement1 = createTestMovement(product1, StockMovementType.INCOMING, 10, StockMovementAction.INSERTED);
         movement2 = createTestMovement(product2, StockMovementType.OUTGOING, 5, StockMovementAction.UPDATED);
-        Mockito.reset(stockMovementRepository);
+        Mockito.reset(stockMovementRepository, stockMovementRollupRepository, stockMovementBatchRepository);
     }
 
     @Test
@@ -84,6 +107,68 @@ public class StockMovementServiceTest {
 
         assertEquals(movement1, result);
         verify(stockMovementRepository).save(movement1);
+        verify(movementLeaderboard).record(movement1);
+    }
+
+    @Test
+    void saveAll_ShouldInsertInOneBatchAndRecordEachMovement() {
+        stockMovementService.saveAll(List.of(movement1, movement2));
+
+        verify(stockMovementBatchRepository).insertAll(List.of(movement1, movement2));
+        verify(stockMovementRepository, never()).save(any());
+        verify(movementLeaderboard).record(movement1);
+        verify(movementLeaderboard).record(movement2);
+    }
+
+    @Test
+    void saveAll_WithMovementsReplayedFromBeforeTheWatermark_ShouldAddThemToTheRollups() {
+        ReflectionTestUtils.setField(stockMovementService, "rollupGraceMs", 600_000L);
+        movement1.setId(UUID.randomUUID());
+        movement1.setDate(LocalDateTime.now().minusHours(3));
+        movement2.setId(UUID.randomUUID());
+
+        stockMovementService.saveAll(List.of(movement1, movement2));
+
+        // Only the replayed movement can be behind the watermark, the recent one is rolled up by the job
+        verify(stockMovementRollupRepository).rollUpLate(List.of(movement1.getId()));
+    }
+
+    @Test
+    void saveAll_WithRecentMovements_ShouldLeaveThemToTheRollUpJob() {
+        ReflectionTestUtils.setField(stockMovementService, "rollupGraceMs", 600_000L);
+
+        stockMovementService.saveAll(List.of(movement1, movement2));
+
+        verify(stockMovementRollupRepository, never()).rollUpLate(any());
+    }
+
+    @Test
+    void saveAll_InATransaction_ShouldRecordTheMovementsOnlyAfterCommit() {
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            stockMovementService.saveAll(List.of(movement1, movement2));
+
+            verify(movementLeaderboard, never()).record(any());
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+            verify(movementLeaderboard).record(movement1);
+            verify(movementLeaderboard).record(movement2);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void rollUpMovements_ShouldRollUpWholeHoursOlderThanTheGracePeriod() {
+        ReflectionTestUtils.setField(stockMovementService, "rollupGraceMs", 600_000L);
+        LocalDateTime before = LocalDateTime.now().minusMinutes(10).truncatedTo(ChronoUnit.HOURS);
+
+        stockMovementService.rollUpMovements();
+
+        ArgumentCaptor<LocalDateTime> upTo = ArgumentCaptor.forClass(LocalDateTime.class);
+        verify(stockMovementRollupRepository).rollUp(upTo.capture());
+        assertEquals(0, upTo.getValue().getMinute());
+        assertFalse(upTo.getValue().isBefore(before));
+        assertFalse(upTo.getValue().isAfter(LocalDateTime.now().minusMinutes(10)));
     }
 
     @Test
@@ -92,14 +177,17 @@ public class StockMovementServiceTest {
         filter.setPage(0);
         filter.setSize(10);
 
-        when(stockMovementRepository.findAllByOrderByDateDesc(any(Pageable.class)))
-                .thenReturn(new PageImpl<>(List.of(movement1, movement2)));
+        LocalDateTime date = LocalDateTime.of(2025, 3, 1, 10, 0);
+        StockMovementDTO movement = new StockMovementDTO(UUID.randomUUID(), date, StockMovementType.INCOMING, UUID.randomUUID(),
+                "Laptop", testUsername, 10, StockMovementAction.INSERTED, null);
+        when(stockMovementRepository.findAllDtos(any(Pageable.class))).thenReturn(new PageImpl<>(List.of(movement)));
 
-        Page<StockMovement> result = stockMovementService.getAllStockMovements(filter);
+        Page<StockMovementDTO> result = stockMovementService.getAllStockMovements(filter);
 
-        assertEquals(2, result.getTotalElements());
-        assertTrue(result.getContent().contains(movement1));
-        assertTrue(result.getContent().contains(movement2));
+        assertEquals(1, result.getTotalElements());
+        assertEquals("2025-03-01T10:00:00", result.getContent().getFirst().date());
+        assertEquals("INCOMING", result.getContent().getFirst().type());
+        assertEquals("Laptop", result.getContent().getFirst().product().name());
     }
 
     @Test
@@ -115,6 +203,7 @@ public class StockMovementServiceTest {
         assertEquals(StockMovementType.INCOMING, result.getType());
         assertEquals(product1.getStock(), result.getQuantity());
         assertEquals(testUsername, result.getUsername());
+        assertEquals(Category.ELECTRONICS, result.getCategory());
     }
 
     @Test
@@ -153,7 +242,7 @@ public class StockMovementServiceTest {
     @Test
     void countStockMovementsByTypeInLast24Hours_ShouldReturnCount() {
         LocalDateTime since = LocalDateTime.now().minusHours(24);
-        when(stockMovementRepository.countByTypeAndDateAfter(StockMovementType.INCOMING, since))
+        when(stockMovementRollupRepository.countByTypeSince(StockMovementType.INCOMING, since))
                 .thenReturn(5L);
 
         long result = stockMovementService.countStockMovementsByTypeInLast24Hours(StockMovementType.INCOMING, since);
@@ -161,28 +250,14 @@ public class StockMovementServiceTest {
         assertEquals(5L, result);
     }
 
-    @Test
-    void countStockMovementsByUsernameInLast24Hours_ShouldReturnUserCounts() {
-        LocalDateTime since = LocalDateTime.now().minusHours(24);
-        List<UsernameCount> expected = List.of(
-                new UsernameCountImpl("user1", 5L),
-                new UsernameCountImpl("user2", 3L)
-        );
-
-        when(stockMovementRepository.countByUsernameAfter(since))
-                .thenReturn(expected);
-
-        List<UsernameCount> result = stockMovementService.countStockMovementsByUsernameInLast24Hours(since);
-
-        assertEquals(expected.size(), result.size());
-        assertEquals(expected.getFirst().getUsername(), result.getFirst().getUsername());
-        assertEquals(expected.getFirst().getCount(), result.getFirst().getCount());
-    }
-
     @Test
     void stockMovementsLast7Days_ShouldReturnDailyCounts() {
-        when(stockMovementRepository.countByTypeAndDateBetween(eq(StockMovementType.INCOMING), any(), any()))
-                .thenReturn(5L);
+        LocalDateTime firstDay = LocalDate.now().minusDays(6).atStartOfDay();
+        List<DailyMovementCount> counts = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            counts.add(new DailyMovementCount(firstDay.plusDays(i), 5L, 2L));
+        }
+        when(stockMovementRollupRepository.dailyCountsSince(firstDay)).thenReturn(counts);
 
         List<Pair<LocalDateTime, Long>> result = stockMovementService.stockMovementsLast7Days(StockMovementType.INCOMING);
 
@@ -191,6 +266,19 @@ public class StockMovementServiceTest {
             assertNotNull(pair.getFirst());
             assertEquals(5L, pair.getSecond());
         });
+        verify(stockMovementRollupRepository, times(1)).dailyCountsSince(firstDay);
+        verifyNoInteractions(stockMovementRepository);
+    }
+
+    @Test
+    void stockMovementsLast7Days_WithoutMovements_ShouldReturnZeroForEveryDay() {
+        when(stockMovementRollupRepository.dailyCountsSince(any())).thenReturn(List.of());
+
+        List<Pair<LocalDateTime, Long>> result = stockMovementService.stockMovementsLast7Days(StockMovementType.OUTGOING);
+
+        assertEquals(7, result.size());
+        assertEquals(LocalDate.now().atStartOfDay(), result.getLast().getFirst());
+        result.forEach(pair -> assertEquals(0L, pair.getSecond()));
     }
 
     @Test
@@ -205,23 +293,41 @@ public class StockMovementServiceTest {
         assertEquals(5L, result.get(Category.CLOTHING));
     }
 
-    public class UsernameCountImpl implements UsernameCount {
-        private final String username;
-        private final Long count;
+    @Test
+    void scrollStockMovements_FirstPage_ShouldReturnCursorOfLastRow() {
+        movement1.setId(UUID.randomUUID());
+        movement2.setId(UUID.randomUUID());
+        StockMovement movement3 = createTestMovement(product1, StockMovementType.OUTGOING, 1, StockMovementAction.UPDATED);
+        when(stockMovementRepository.findAllByOrderByDateDescIdAsc(argThat((Limit limit) -> limit.max() == 3))).thenReturn(List.of(movement1, movement2, movement3));
+
+        CursorPage<StockMovement> result = stockMovementService.scrollStockMovements(new StockMovementCursorFilter(null, 2));
+
+        assertEquals(List.of(movement1, movement2), result.content());
+        assertTrue(result.hasNext());
+        StockMovementCursor cursor = StockMovementCursor.decode(result.nextCursor());
+        assertEquals(movement2.getDate(), cursor.date());
+        assertEquals(movement2.getId(), cursor.id());
+        verify(stockMovementRepository, never()).count();
+    }
 
-        public UsernameCountImpl(String username, Long count) {
-            this.username = username;
-            this.count = count;
-        }
+    @Test
+    void scrollStockMovements_WithCursor_ShouldSeekAfterCursor() {
+        StockMovementCursor cursor = new StockMovementCursor(LocalDateTime.now().minusHours(1), UUID.randomUUID());
+        when(stockMovementRepository.findAllAfter(eq(cursor.date()), eq(cursor.id()), argThat((Limit limit) -> limit.max() == 11))).thenReturn(List.of(movement1));
 
-        @Override
-        public String getUsername() {
-            return username;
-        }
+        CursorPage<StockMovement> result = stockMovementService.scrollStockMovements(new StockMovementCursorFilter(cursor.encode(), 10));
 
-        @Override
-        public Long getCount() {
-            return count;
-        }
+        assertEquals(List.of(movement1), result.content());
+        assertFalse(result.hasNext());
+        assertNull(result.nextCursor());
+    }
+
+    @Test
+    void scrollStockMovements_WithInvalidCursorOrSize_ShouldThrow() {
+        assertThrows(IllegalArgumentException.class,
+                () -> stockMovementService.scrollStockMovements(new StockMovementCursorFilter("not-a-cursor", 10)));
+        assertThrows(IllegalArgumentException.class,
+                () -> stockMovementService.scrollStockMovements(new StockMovementCursorFilter(null, 0)));
+        verifyNoInteractions(stockMovementRepository);
     }
 }
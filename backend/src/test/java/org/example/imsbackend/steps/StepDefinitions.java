@@ -7,7 +7,10 @@ import io.cucumber.java.en.Given;
 import io.cucumber.java.en.Then;
 import io.cucumber.java.en.When;
 
+import org.example.imsbackend.dto.LowStockNotificationDTO;
 import org.example.imsbackend.dto.LowStockNotificationFilter;
+import org.example.imsbackend.dto.StockAdjustmentDTO;
+import org.example.imsbackend.dto.StockMovementDTO;
 import org.example.imsbackend.dto.StockMovementFilter;
 import org.example.imsbackend.enums.Category;
 import org.example.imsbackend.enums.StockMovementAction;
@@ -24,10 +27,14 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.web.client.TestRestTemplate;
 import org.springframework.boot.test.web.server.LocalServerPort;
 import org.springframework.http.*;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.LinkedMultiValueMap;
 import org.springframework.util.MultiValueMap;
 
+import java.sql.ResultSet;
+import java.sql.Statement;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
@@ -64,7 +71,11 @@ public class StepDefinitions {
     private List<StockMovement> createdMovements = new ArrayList<>();
     private StockMovement lastCreatedMovement;
 
-    public StepDefinitions(ProductService productService, LowStockNotificationService lowStockNotificationService, StockMovementService stockMovementService) {
+    private final JdbcTemplate jdbcTemplate;
+
+    public StepDefinitions(ProductService productService, LowStockNotificationService lowStockNotificationService, StockMovementService stockMovementService,
+                           JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
         this.productService = productService;
         this.lowStockNotificationService = lowStockNotificationService;
         this.stockMovementService = stockMovementService;
@@ -152,6 +163,8 @@ public class StepDefinitions {
         addFilterParam(queryParams, filters, "category", "categories");
         addFilterParam(queryParams, filters, "minPrice", "minPrice");
         addFilterParam(queryParams, filters, "maxPrice", "maxPrice");
+        addFilterParam(queryParams, filters, "sort", "sort");
+        addFilterParam(queryParams, filters, "direction", "direction");
         
 
         String filterEndpoint = baseProductUrl + "/search";
@@ -368,6 +381,12 @@ public class StepDefinitions {
         lastResponse = restTemplate.getForEntity(url, String.class);
     }
 
+    @When("I search products by relevance for {string}")
+    public void iSearchProductsByRelevanceFor(String term) {
+        String url = baseProductUrl + "/search/relevance" + "?name=" + term;
+        lastResponse = restTemplate.getForEntity(url, String.class);
+    }
+
     @When("I filter products by category {string}")
     public void iFilterProductsByCategory(String category) {
         String url = baseProductUrl + "/search" + "?categories=" + category;
@@ -402,6 +421,14 @@ public class StepDefinitions {
         lastResponse = restTemplate.getForEntity(url, String.class);
     }
 
+    @When("I retrieve the product by its ID again with the returned ETag")
+    public void iRetrieveTheProductByItsIdAgainWithTheReturnedEtag() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setIfNoneMatch(lastResponse.getHeaders().getETag());
+        String url = baseProductUrl + "/" + lastCreatedProduct.getId() + "/details";
+        lastResponse = restTemplate.exchange(url, HttpMethod.GET, new HttpEntity<>(headers), String.class);
+    }
+
     @When("I retrieve a product with a non-existent ID")
     public void iRetrieveAProductWithANonExistentId() {
         String url = baseProductUrl + "/" + UUID.randomUUID() + "/details";
@@ -417,6 +444,7 @@ public class StepDefinitions {
         Map<String, String> productData = dataTable.asMap();
         Product updatedProduct = createProductFromData(productData);
         updatedProduct.setId(lastCreatedProduct.getId());
+        updatedProduct.setVersion(lastCreatedProduct.getVersion());
         
         lastResponse = updateProduct(updatedProduct, lastCreatedProduct.getId());
         
@@ -455,6 +483,48 @@ public class StepDefinitions {
         Assertions.assertEquals(expectedCount, actualCount);
     }
 
+    @Then("the products should be ranked as:")
+    public void theProductsShouldBeRankedAs(List<String> expectedNames) {
+        try {
+            List<Map<String, Object>> products = objectMapper.readValue(lastResponse.getBody(), List.class);
+            Assertions.assertEquals(expectedNames, products.stream().map(product -> product.get("name")).toList());
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("Failed to parse response", e);
+        }
+    }
+
+    @Then("the products on the page should be ordered as:")
+    public void theProductsOnThePageShouldBeOrderedAs(List<String> expectedNames) {
+        Assertions.assertEquals(expectedNames, getProductsFromResponse().stream().map(product -> product.get("name")).toList());
+    }
+
+    // Sorting is disabled so the plan shows whether an index can deliver the order, small test tables favour a sort.
+    // Names are ordered with the ucs_basic collation, as ProductService does
+    @Then("a deep product page sorted by column {string} should be read through index {string}")
+    public void aDeepProductPageSortedByColumnShouldBeReadThroughIndex(String column, String index) {
+        String key = "name".equals(column) ? "name COLLATE ucs_basic" : column;
+        String plan = jdbcTemplate.execute((ConnectionCallback<String>) connection -> {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("SET enable_sort = off");
+                try {
+                    StringBuilder lines = new StringBuilder();
+                    try (ResultSet rows = statement.executeQuery(
+                            "EXPLAIN SELECT * FROM products ORDER BY " + key + " DESC, id DESC LIMIT 10 OFFSET 1000")) {
+                        while (rows.next()) {
+                            lines.append(rows.getString(1)).append('\n');
+                        }
+                    }
+                    return lines.toString();
+                } finally {
+                    // The connection goes back to the pool, later scenarios must plan with sorting enabled
+                    statement.execute("RESET enable_sort");
+                }
+            }
+        });
+        Assertions.assertTrue(plan.contains(index), plan);
+        Assertions.assertFalse(plan.contains("Sort"), plan);
+    }
+
     @Then("all products should contain {string} in their name")
     public void allProductsShouldContainInTheirName(String expectedText) {
         validateAllProducts(product -> {
@@ -522,18 +592,18 @@ public class StepDefinitions {
     @Then("a low stock notification should be created with:")
     public void aLowStockNotificationShouldBeCreatedWith(DataTable dataTable) {
         Map<String, String> expectedData = dataTable.asMap();
-        List<LowStockNotification> notifications = lowStockNotificationService.findAll(new LowStockNotificationFilter(0,1)).getContent();
+        List<LowStockNotificationDTO> notifications = lowStockNotificationService.findAll(new LowStockNotificationFilter(0,1)).getContent();
 
         // Get the latest notification
-        LowStockNotification latestNotification = notifications.getFirst();
+        LowStockNotificationDTO latestNotification = notifications.getFirst();
         // print for debugging
-        System.out.println("Latest Notification stock: " + latestNotification.getCurrentStock());
+        System.out.println("Latest Notification stock: " + latestNotification.currentStock());
         System.out.println("Expected stock: " + expectedData.get("currentStock"));
 
-        assertEquals(Integer.parseInt(expectedData.get("currentStock")), latestNotification.getCurrentStock());
-        assertEquals(Integer.parseInt(expectedData.get("minimumStock")), latestNotification.getMinimumStock());
-        assertEquals(expectedData.get("productName"), latestNotification.getProduct().getName());
-        assertNotNull(latestNotification.getDate());
+        assertEquals(Integer.parseInt(expectedData.get("currentStock")), latestNotification.currentStock());
+        assertEquals(Integer.parseInt(expectedData.get("minimumStock")), latestNotification.minimumStock());
+        assertEquals(expectedData.get("productName"), latestNotification.product().name());
+        assertNotNull(latestNotification.date());
     }
 
     @Then("no low stock notification should be created")
@@ -581,15 +651,41 @@ public class StepDefinitions {
     @Then("a stock movement should be created with:")
     public void aStockMovementShouldBeCreatedWith(DataTable dataTable) {
         Map<String, String> expectedData = dataTable.asMap();
-        List<StockMovement> movements = stockMovementService.getAllStockMovements(new StockMovementFilter(0, 1)).getContent();
+        List<StockMovementDTO> movements = stockMovementService.getAllStockMovements(new StockMovementFilter(0, 1)).getContent();
 
         // Get the latest movement
-        StockMovement latestMovement = movements.getFirst();
+        StockMovementDTO latestMovement = movements.getFirst();
+
+        assertEquals(StockMovementType.valueOf(expectedData.get("type")).name(), latestMovement.type());
+        assertEquals(Integer.parseInt(expectedData.get("quantity")), latestMovement.quantity());
+        assertEquals(StockMovementAction.valueOf(expectedData.get("action")).name(), latestMovement.action());
+        assertEquals(expectedData.get("username"), latestMovement.username());
+        assertNotNull(latestMovement.date());
+    }
+
+    @When("I adjust the stock of the product with:")
+    public void iAdjustTheStockOfTheProductWith(DataTable dataTable) {
+        List<StockAdjustmentDTO> adjustments = dataTable.asMaps().stream()
+                .map(row -> new StockAdjustmentDTO(lastCreatedProduct.getId(), Integer.parseInt(row.get("delta")), row.get("reason")))
+                .toList();
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        lastResponse = restTemplate.postForEntity(baseProductUrl + "/stock-adjustments", new HttpEntity<>(adjustments, headers), String.class);
+    }
+
+    @Then("the product stock should be {int}")
+    public void theProductStockShouldBe(int expectedStock) {
+        assertEquals(expectedStock, productService.getProductById(lastCreatedProduct.getId()).orElseThrow().getStock());
+    }
 
-        assertEquals(StockMovementType.valueOf(expectedData.get("type")), latestMovement.getType());
-        assertEquals(Integer.parseInt(expectedData.get("quantity")), latestMovement.getQuantity());
-        assertEquals(StockMovementAction.valueOf(expectedData.get("action")), latestMovement.getAction());
-        assertEquals(expectedData.get("username"), latestMovement.getUsername());
-        assertNotNull(latestMovement.getDate());
+    @Then("the stock adjustment movements should be:")
+    public void theStockAdjustmentMovementsShouldBe(DataTable dataTable) {
+        // Movements of one batch can share the same date, they are compared by quantity
+        List<Map<String, String>> movements = jdbcTemplate.query(
+                "SELECT type, quantity, reason FROM stock_movements WHERE product_id = ? AND action = 'UPDATED' ORDER BY quantity",
+                (rs, rowNum) -> Map.of("type", rs.getString("type"), "quantity", String.valueOf(rs.getInt("quantity")),
+                        "reason", rs.getString("reason")),
+                lastCreatedProduct.getId());
+        assertEquals(dataTable.asMaps(), movements);
     }
 }
@@ -177,6 +177,19 @@ Feature: Product Management
     And I should receive 2 products
     And all products should contain "laptop" in their name
 
+  Scenario: Search products by relevance
+    Given I am an anonymous user
+    And the following products exist:
+      | name           | description            | price | initialStock | stock | minimumStock | category    |
+      | Mouse Wireless | Works with any laptop  |    50 |          100 |    95 |          20 | ELECTRONICS |
+      | Laptop Basic   | Entry laptop           |   600 |           20 |    15 |           5 | ELECTRONICS |
+      | Desk Lamp      | LED lamp               |    30 |           40 |    35 |           8 | FURNITURE   |
+    When I search products by relevance for "laptop"
+    Then I should receive a 200 response
+    And the products should be ranked as:
+      | Laptop Basic   |
+      | Mouse Wireless |
+
   Scenario: Retrieve products with category filter
     Given I am an anonymous user
     And the following products exist:
@@ -201,6 +214,39 @@ Feature: Product Management
     And I should receive 1 products
     And all products should have price between 100 and 200
 
+  Scenario: Retrieve products sorted by stock to minimum ratio
+    Given I am an anonymous user
+    And the following products exist:
+      | name      | description   | price | initialStock | stock | minimumStock | category    |
+      | Product A | Description A |    50 |          100 |    90 |          30 | ELECTRONICS |
+      | Product B | Description B |   150 |           50 |    45 |          45 | ELECTRONICS |
+      | Product C | Description C |   250 |           30 |    25 |           5 | ELECTRONICS |
+    When I filter products with:
+      | sort      | stock_ratio |
+      | direction | desc        |
+    Then I should receive a 200 response
+    And the products on the page should be ordered as:
+      | Product C |
+      | Product A |
+      | Product B |
+
+  Scenario: Retrieve products with an unknown sort key
+    Given I am an anonymous user
+    When I filter products with:
+      | sort | description |
+    Then I should receive a 400 response
+
+  Scenario Outline: Deep sorted pages are read through the matching index
+    Then a deep product page sorted by column "<column>" should be read through index "<index>"
+
+    Examples:
+      | column      | index                       |
+      | name        | idx_products_name_ucs_id    |
+      | price       | idx_products_price_id       |
+      | stock       | idx_products_stock_id       |
+      | category    | idx_products_category_id    |
+      | stock_ratio | idx_products_stock_ratio_id |
+
   Scenario: Retrieve a specific product by ID
     Given a product exists with the following details:
       | name         | Test Product     |
@@ -214,6 +260,19 @@ Feature: Product Management
     Then I should receive a 200 response
     And the product details should match the created product
 
+  Scenario: Retrieve an unchanged product with its ETag
+    Given a product exists with the following details:
+      | name         | Test Product     |
+      | description  | Test Description |
+      | price        |            99.99 |
+      | initialStock |               50 |
+      | stock        |               45 |
+      | minimumStock |               10 |
+      | category     | ELECTRONICS      |
+    When I retrieve the product by its ID
+    And I retrieve the product by its ID again with the returned ETag
+    Then I should receive a 304 response
+
   Scenario: Retrieve a non-existent product by ID
     Given I am an anonymous user
     When I retrieve a product with a non-existent ID
@@ -79,3 +79,24 @@ Feature: Stock Movement Management
     And I should receive 5 stock movements
     And the pagination information should indicate page 0
     And the total elements should be 6
+
+  Scenario: Track stock movements of a stock adjustment batch
+    Given I am an authenticated user with credentials "admin@example.com" and "admin1"
+    And a product exists with the following details:
+      | name         | Scanned Product  |
+      | description  | Description      |
+      | price        |          100.00  |
+      | initialStock |              50  |
+      | stock        |              50  |
+      | minimumStock |              10  |
+      | category     | ELECTRONICS      |
+    When I adjust the stock of the product with:
+      | delta | reason   |
+      |     5 | Delivery |
+      |    -8 | Picking  |
+    Then I should receive a 200 response
+    And the product stock should be 47
+    And the stock adjustment movements should be:
+      | type     | quantity | reason   |
+      | INCOMING | 5        | Delivery |
+      | OUTGOING | 8        | Picking  |
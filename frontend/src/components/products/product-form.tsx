@@ -90,6 +90,7 @@ export default function ProductForm({ product, onSubmit, onCancel }: ProductForm
         stock: Number(formData.stock),
         category: formData.category,
         minimumStock: formData.minimumStock ? Number(formData.minimumStock) : 0,
+        version: product.version,
       }
       onSubmit(updateData)
     } else {
@@ -9,6 +9,7 @@ export interface Product {
   stock: number
   minimumStock?: number
   category: string
+  version?: number
 }
 
 export interface ProductResponse extends BaseResponse {
@@ -28,6 +29,7 @@ export interface UpdateProductRequest extends CreateProductRequest {
   id: string
   stock: number
   minimumStock: number
+  version?: number
 }
 
 export interface ProductFilters {